@@ -4,37 +4,39 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
-import android.util.Log;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.AdapterView;
+import android.widget.BaseAdapter;
 import android.widget.GridView;
 import android.widget.ImageView;
-import android.widget.SimpleAdapter;
 
 import com.example.laptop.phototimer.util.AsyncImageLoader;
+import com.example.laptop.phototimer.util.LibraryIndex;
 import com.example.laptop.phototimer.util.ScaledBitmapCache;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class LibraryActivity extends Activity {
 
     static int CELL_WIDTH = 92;
     static int CELL_HEIGHT = 69;
+    static int PAGE_SIZE = 120;
+    static String LIBRARY_INDEX_FILENAME = ".libraryindex";
 
     String imageDirectory;
 
     GridView gridView;
     int selectedGridIndex;
 
-    List imageMaps = new ArrayList();
-    static String IMAGE_URI_KEY = "imageUri";
+    LibraryIndex libraryIndex;
+    LibraryAdapter adapter;
+    volatile boolean indexChanged = false;
 
     ScaledBitmapCache bitmapCache;
     AsyncImageLoader imageLoader = new AsyncImageLoader();
@@ -45,70 +47,161 @@ public class LibraryActivity extends Activity {
         return intent;
     }
 
+    /**
+     * Grid adapter over a snapshot of the library index. Cells are exposed a page at a time as
+     * the grid scrolls toward the end, and image URIs are only built for cells being shown.
+     */
+    class LibraryAdapter extends BaseAdapter {
+        List<LibraryIndex.Entry> entries = Collections.emptyList();
+        int pagedCount = 0;
+        boolean pageRequested = false;
+
+        void setEntries(List<LibraryIndex.Entry> newEntries) {
+            entries = newEntries;
+            pagedCount = Math.min(entries.size(), Math.max(pagedCount, PAGE_SIZE));
+            notifyDataSetChanged();
+        }
+
+        Uri imageUriAtPosition(int position) {
+            return Uri.fromFile(libraryIndex.fileForEntry(entries.get(position)));
+        }
+
+        void requestNextPage() {
+            if (pageRequested || pagedCount>=entries.size()) return;
+            pageRequested = true;
+            gridView.post(new Runnable() {
+                public void run() {
+                    pageRequested = false;
+                    pagedCount = Math.min(entries.size(), pagedCount + PAGE_SIZE);
+                    notifyDataSetChanged();
+                }
+            });
+        }
+
+        @Override public int getCount() {
+            return pagedCount;
+        }
+
+        @Override public Object getItem(int position) {
+            return entries.get(position);
+        }
+
+        @Override public long getItemId(int position) {
+            return position;
+        }
+
+        @Override public View getView(int position, View convertView, ViewGroup parent) {
+            View cell = convertView;
+            if (cell==null) {
+                cell = LayoutInflater.from(LibraryActivity.this).inflate(R.layout.library_cell, parent, false);
+            }
+            ImageView imageView = (ImageView)cell.findViewById(R.id.grid_image);
+            imageLoader.loadImageIntoViewAsync(bitmapCache, imageUriAtPosition(position), imageView, CELL_WIDTH, CELL_HEIGHT, getResources());
+            if (position >= pagedCount - PAGE_SIZE/4) {
+                requestNextPage();
+            }
+            return cell;
+        }
+    }
+
+    /** Shows the saved index as soon as it is read, then again if the directory scan changed it. */
+    class LoadLibraryTask extends AsyncTask<Void, Void, Boolean> {
+        @Override protected Boolean doInBackground(Void... args) {
+            libraryIndex.load();
+            publishProgress();
+            return libraryIndex.refresh();
+        }
+
+        @Override protected void onProgressUpdate(Void... values) {
+            displayGrid();
+        }
+
+        @Override protected void onPostExecute(Boolean changed) {
+            if (changed) {
+                displayGrid();
+            }
+        }
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.library_list);
 
         imageDirectory = getIntent().getStringExtra("imageDirectory");
-        bitmapCache = new ScaledBitmapCache(this, imageDirectory + File.separator + "thumbnails");
+        String thumbnailDirectory = imageDirectory + File.separator + "thumbnails";
+        bitmapCache = new ScaledBitmapCache(this, thumbnailDirectory);
+        libraryIndex = new LibraryIndex(new File(imageDirectory), new File(thumbnailDirectory, LIBRARY_INDEX_FILENAME),
+                new File(thumbnailDirectory));
+        bitmapCache.setThumbnailListener(new ScaledBitmapCache.ThumbnailListener() {
+            public void thumbnailWritten(Uri imageUri, File thumbnailFile) {
+                if (libraryIndex.markThumbnailCached(imageUri.getLastPathSegment())) {
+                    indexChanged = true;
+                }
+            }
+        });
 
         gridView = (GridView) findViewById(R.id.gridview);
+        adapter = new LibraryAdapter();
+        gridView.setAdapter(adapter);
         gridView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             public void onItemClick(AdapterView parent, View view, int position, long id) {
                 selectedGridIndex = position;
                 ViewImageActivity.startActivityWithImageURI(LibraryActivity.this,
-                        (Uri)((Map)imageMaps.get(position)).get(IMAGE_URI_KEY), "image/jpeg");
+                        adapter.imageUriAtPosition(position), "image/jpeg");
             }
         });
-        readImageThumbnails();
-        displayGrid();
+        new LoadLibraryTask().execute();
     }
 
-    void readImageThumbnails() {
-        List<String> filenames = Collections.emptyList();
-        File dir = new File(imageDirectory);
-        if (dir.isDirectory()) {
-            filenames = Arrays.asList(dir.list());
-        }
-        Collections.sort(filenames);
-        Collections.reverse(filenames);
-
-        imageMaps.clear();
-        for(String fname : filenames) {
-            if (fname.endsWith(".jpg")) {
-                Uri imageUri = Uri.fromFile(new File(imageDirectory + File.separator + fname));
-                Map dmap = new HashMap();
-                dmap.put(IMAGE_URI_KEY, imageUri);
-                imageMaps.add(dmap);
-            }
+    @Override
+    protected void onPause() {
+        if (indexChanged) {
+            indexChanged = false;
+            saveIndexInBackground();
         }
+        super.onPause();
     }
 
-    void displayGrid() {
-        SimpleAdapter adapter = new SimpleAdapter(this, imageMaps,
-                R.layout.library_cell,
-                new String[] {IMAGE_URI_KEY},
-                new int[] {R.id.grid_image});
-        adapter.setViewBinder(new SimpleAdapter.ViewBinder() {
-            public boolean setViewValue(View view, Object data, String textRepresentation) {
-                Uri imageUri = (Uri)data;
-                imageLoader.loadImageIntoViewAsync(bitmapCache, imageUri, (ImageView)view, CELL_WIDTH, CELL_HEIGHT, getResources());
-                return true;
+    void saveIndexInBackground() {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                libraryIndex.save();
             }
         });
-        gridView.setAdapter(adapter);
+    }
+
+    @Override
+    protected void onDestroy() {
+        imageLoader.shutdown();
+        super.onDestroy();
+    }
+
+    void displayGrid() {
+        adapter.setEntries(libraryIndex.entries());
 
         View noImagesView = findViewById(R.id.noImagesTextView);
-        noImagesView.setVisibility(imageMaps.size()>0 ? View.GONE : View.VISIBLE);
+        noImagesView.setVisibility(adapter.entries.size()>0 ? View.GONE : View.VISIBLE);
     }
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (resultCode==ViewImageActivity.DELETE_RESULT) {
-            bitmapCache.removeUri((Uri)((Map)imageMaps.get(selectedGridIndex)).get(IMAGE_URI_KEY));
-            imageMaps.remove(selectedGridIndex);
-            displayGrid();
+            final Uri deletedUri = adapter.imageUriAtPosition(selectedGridIndex);
+            final String deletedFilename = adapter.entries.get(selectedGridIndex).filename;
+            // removal waits on the index lock, which a refresh or save can hold for a while
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                public void run() {
+                    bitmapCache.removeUri(deletedUri);
+                    libraryIndex.remove(deletedFilename);
+                    runOnUiThread(new Runnable() {
+                        public void run() {
+                            displayGrid();
+                        }
+                    });
+                    libraryIndex.save();
+                }
+            });
         }
     }
 
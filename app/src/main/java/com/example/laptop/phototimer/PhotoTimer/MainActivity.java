@@ -5,17 +5,18 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.hardware.Camera;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Environment;
 import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.SurfaceView;
 import android.view.View;
 import android.view.Window;
+import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.FrameLayout;
 import android.widget.TextView;
@@ -23,19 +24,31 @@ import android.widget.Toast;
 
 import com.example.laptop.phototimer.util.ARManager;
 import com.example.laptop.phototimer.util.AndroidUtils;
+import com.example.laptop.phototimer.util.AudioCuePlayer;
+import com.example.laptop.phototimer.util.BurstSession;
 import com.example.laptop.phototimer.util.CameraUtils;
+import com.example.laptop.phototimer.util.CaptureDecoder;
+import com.example.laptop.phototimer.util.DecodePlanner;
+import com.example.laptop.phototimer.util.ImageWriteQueue;
+import com.example.laptop.phototimer.util.IntervalScheduler;
+import com.example.laptop.phototimer.util.MediaScanBatcher;
+import com.example.laptop.phototimer.util.MotionDetector;
+import com.example.laptop.phototimer.util.PictureFileNamer;
+import com.example.laptop.phototimer.util.PipelinePreviewCallback;
+import com.example.laptop.phototimer.util.PreviewFramePipeline;
+import com.example.laptop.phototimer.util.ScaledBitmapCache;
+import com.example.laptop.phototimer.util.ScoredPreviewSizeStrategy;
 import com.example.laptop.phototimer.util.ShutterButton;
+import com.example.laptop.phototimer.util.StillnessDetector;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.text.Format;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class MainActivity extends Activity implements Camera.PictureCallback, Camera.AutoFocusCallback, ShutterButton.OnShutterButtonListener {
 
@@ -44,6 +57,16 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
     static final String DELAY_PREFERENCES_KEY = "delay";
     int pictureDelay = DEFAULT_DELAY;
 
+    static final long ONE_SECOND_NANOS = 1000000000L;
+    static final List<Integer> TIME_LAPSE_INTERVALS = Arrays.asList(0, 10, 30, 60);
+    static final List<Integer> TIME_LAPSE_FRAME_COUNTS = Arrays.asList(60, 120, 360, 720);
+    static final int DEFAULT_TIME_LAPSE_FRAME_COUNT = 360;
+    int timeLapseInterval = 0;
+    int timeLapseFrameCount = DEFAULT_TIME_LAPSE_FRAME_COUNT;
+    IntervalScheduler countdownScheduler;
+    IntervalScheduler timeLapseScheduler;
+    int timeLapseFrame = -1;
+
     static final String FLASH_MODE_AUTO = "auto";
     static final String FLASH_MODE_ON = "on";
     static final String FLASH_MODE_OFF = "off";
@@ -51,7 +74,7 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
     Map<String, String> flashButtonLabels = new HashMap<String, String>();
 
     String savedImageDirectory = Environment.getExternalStorageDirectory() + File.separator + "Photo Timer";
-    Format dateInFilename = new SimpleDateFormat("yyyyMMdd_HHmmss");
+    PictureFileNamer pictureFileNamer = new PictureFileNamer(new File(savedImageDirectory));
 
     ARManager arManager;
     SurfaceView cameraView;
@@ -63,6 +86,10 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
     Button switchCameraButton;
     Button flashButton;
     Button numberOfPicturesButton;
+    Button timeLapseButton;
+    Button timeLapseCountButton;
+    Button motionTriggerButton;
+    Button stillnessButton;
     TextView statusTextField;
 
     int currentPictureID = 0;
@@ -77,9 +104,41 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
     List<String> flashModes = new ArrayList<String>();
     int selectedFlashMode;
     boolean flashButtonConfigured = false;
+    boolean switchingCamera = false;
 
+    static final List<Integer> BURST_SIZES = Arrays.asList(1, 4, 10);
+    static final int MAX_GRID_PICTURES = 4;
     int picturesToTake = 1;
+    boolean lockFocusDuringBurst = true;
+    BurstSession burstSession;
     List<Uri> pictureURIs;
+    long burstCompletedNanos;
+    ScaledBitmapCache reviewBitmapCache;
+    CaptureDecoder captureDecoder;
+    int reviewDecodeSize;
+
+    Camera.ShutterCallback shutterCallback = new Camera.ShutterCallback() {
+        public void onShutter() {
+            if (burstSession!=null) burstSession.shutterFired(System.nanoTime());
+        }
+    };
+
+    static final int NUM_PREVIEW_BUFFERS = 3;
+    boolean motionTriggerEnabled = false;
+    boolean motionTriggerArmed = false;
+    MotionDetector motionDetector;
+    boolean stillnessWaitEnabled = false;
+    boolean stillnessWaitActive = false;
+    StillnessDetector stillnessDetector;
+    PreviewFramePipeline framePipeline;
+
+    MediaScanBatcher mediaScanBatcher;
+    AudioCuePlayer audioCuePlayer;
+    ImageWriteQueue imageWriteQueue = new ImageWriteQueue(ImageWriteQueue.FsyncPolicy.NONE, new Executor() {
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    });
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -92,9 +151,38 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
         flashButtonLabels.put(FLASH_MODE_OFF, getString(R.string.flashButtonOffLabel));
 
         cameraView = (SurfaceView)findViewById(R.id.cameraView);
-        arManager = ARManager.createAndSetupCameraView(this, cameraView, null);
+        motionDetector = new MotionDetector(new MotionDetector.Listener() {
+            public void motionDetected(float changedFraction) {
+                // called on the pipeline thread
+                handler.post(new Runnable() {
+                    public void run() {motionTriggered();}
+                });
+            }
+        });
+        stillnessDetector = new StillnessDetector(new StillnessDetector.Listener() {
+            public void stillnessDetected(final boolean timedOut, final long waitNanos) {
+                // called on the pipeline thread
+                handler.post(new Runnable() {
+                    public void run() {stillnessReached(timedOut, waitNanos);}
+                });
+            }
+        });
+        // both detectors return immediately unless armed
+        PreviewFramePipeline.FrameProcessor frameProcessor = new PreviewFramePipeline.FrameProcessor() {
+            public void processFrame(byte[] frame, int width, int height) {
+                motionDetector.processFrame(frame, width, height);
+                stillnessDetector.processFrame(frame, width, height);
+            }
+        };
+        // capacity 1: frames that arrive while one is being analyzed are dropped rather than delayed
+        framePipeline = new PreviewFramePipeline(frameProcessor, 1);
+        arManager = ARManager.createAndSetupCameraView(this, cameraView, new PipelinePreviewCallback(framePipeline));
+        arManager.setNumberOfPreviewCallbackBuffers(NUM_PREVIEW_BUFFERS);
+        // match the preview's aspect ratio to the picture size set in cameraOpened
+        arManager.setPreviewSizeStrategy(new ScoredPreviewSizeStrategy());
         arManager.setCameraOpenedCallback(new Runnable() {public void run() {cameraOpened();}});
         arManager.setCameraStartedCallback(new Runnable() {public void run() {cameraPreviewStarted();}});
+        arManager.setFirstPreviewFrameCallback(new Runnable() {public void run() {firstPreviewFrameReceived();}});
 
         shutterButton = (ShutterButton)findViewById(R.id.shutterButton);
         shutterButton.setOnShutterButtonListener(this);
@@ -103,6 +191,11 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
         cancelPictureButton = (Button)findViewById(R.id.cancelPictureButton);
         flashButton = (Button)findViewById(R.id.flashButton);
         numberOfPicturesButton = (Button)findViewById(R.id.numberOfPicturesButton);
+        timeLapseButton = (Button)findViewById(R.id.timeLapseButton);
+        timeLapseCountButton = (Button)findViewById(R.id.timeLapseCountButton);
+        updateTimeLapseCountButton();
+        motionTriggerButton = (Button)findViewById(R.id.motionTriggerButton);
+        stillnessButton = (Button)findViewById(R.id.stillnessButton);
 
         switchCameraButton = (Button)findViewById(R.id.switchCameraButton);
         hasMultipleCameras = (CameraUtils.numberOfCameras() > 1);
@@ -115,25 +208,61 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
         AndroidUtils.bindOnClickListener(this, switchCameraButton, "switchCamera");
         AndroidUtils.bindOnClickListener(this, flashButton, "cycleFlashMode");
         AndroidUtils.bindOnClickListener(this, numberOfPicturesButton, "toggleNumberOfPictures");
+        AndroidUtils.bindOnClickListener(this, timeLapseButton, "cycleTimeLapseInterval");
+        AndroidUtils.bindOnClickListener(this, timeLapseCountButton, "cycleTimeLapseFrameCount");
+        AndroidUtils.bindOnClickListener(this, motionTriggerButton, "toggleMotionTrigger");
+        AndroidUtils.bindOnClickListener(this, stillnessButton, "toggleStillnessWait");
         AndroidUtils.bindOnClickListener(this, findViewById(R.id.helpButton), "doHelp");
         AndroidUtils.bindOnClickListener(this, findViewById(R.id.libraryButton), "openLibrary");
 
+        mediaScanBatcher = new MediaScanBatcher(this);
+        reviewBitmapCache = new ScaledBitmapCache(this, savedImageDirectory + File.separator + "thumbnails");
+        captureDecoder = new CaptureDecoder(reviewBitmapCache,
+                DecodePlanner.decodeThreadCount(Runtime.getRuntime().availableProcessors(), MAX_GRID_PICTURES));
+        // covers a grid cell, half the screen on each side, in either orientation
+        DisplayMetrics dm = new DisplayMetrics();
+        getWindowManager().getDefaultDisplay().getMetrics(dm);
+        reviewDecodeSize = Math.max(dm.widthPixels, dm.heightPixels) / 2;
+        audioCuePlayer = new AudioCuePlayer(this, R.raw.tick_one);
+
         this.setVolumeControlStream(AudioManager.STREAM_MUSIC);
         this.readDelayPreference();
     }
 
     @Override
     public void onPause() {
-        if (pictureTimer > 0) {
+        if (pictureTimer > 0 || timeLapseScheduler!=null || motionTriggerArmed || stillnessWaitActive) {
             this.cancelSavePicture();
         }
+        framePipeline.stop();
+        if (framePipeline.getProcessingFailures() > 0) {
+            Log.w("CamTimer", framePipeline.getProcessingFailures() + " preview frames failed to process",
+                    framePipeline.getFirstFailure());
+            framePipeline.resetCounters();
+        }
         arManager.stopCamera();
+        mediaScanBatcher.flush();
         super.onPause();
     }
 
+    @Override
+    public void onDestroy() {
+        // pending writes still complete after this; their thumbnail requests are dropped by the decoder
+        imageWriteQueue.shutdown();
+        captureDecoder.shutdown();
+        Log.i("CamTimer", captureDecoder.debugInfo());
+        arManager.shutdown();
+        Log.i("CamTimer", "Audio cues: " + audioCuePlayer.debugInfo());
+        audioCuePlayer.release();
+        super.onDestroy();
+    }
+
     @Override
     public void onResume() {
         super.onResume();
+        // the open runs while the surface is created; startCamera waits for it if needed
+        arManager.openCameraInBackground();
+        framePipeline.start();
         arManager.startCameraIfVisible();
         AndroidUtils.setSystemUiLowProfile(cameraView);
     }
@@ -143,7 +272,7 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
             maxCameraViewSize = new int[] {cameraView.getWidth(), cameraView.getHeight()};
         }
         arManager.setPreferredPreviewSize(maxCameraViewSize[0], maxCameraViewSize[1]);
-        CameraUtils.setLargestCameraSize(arManager.getCamera());
+        arManager.setLargestPictureSize();
         if (!flashButtonConfigured) {
             configureFlashButton();
             flashButtonConfigured = true;
@@ -152,12 +281,23 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
 
     public void cameraPreviewStarted() {
         // resize camera view to scaled size of preview image
-        Camera.Size size = arManager.getCamera().getParameters().getPreviewSize();
+        Camera.Size size = arManager.getCameraParameters().get().getPreviewSize();
+        Log.d("CamTimer", "Camera started with " + arManager.getCameraParameters().getRoundTrips() + " parameter round trips");
         int[] scaledWH = AndroidUtils.scaledWidthAndHeightToMaximum(
                 size.width, size.height, maxCameraViewSize[0], maxCameraViewSize[1]);
         cameraView.setLayoutParams(new FrameLayout.LayoutParams(scaledWH[0], scaledWH[1], Gravity.CENTER));
     }
 
+    public void firstPreviewFrameReceived() {
+        Log.i("CamTimer", arManager.getStartupMetrics().summary());
+        if (switchingCamera) {
+            switchingCamera = false;
+            Log.i("CamTimer", String.format("Camera switch: %.1fms (median %.1fms over %d), cached config: %s",
+                    arManager.getLastSwitchLatencyNanos() / 1e6, arManager.getSwitchLatencyStats().medianNanos() / 1e6,
+                    arManager.getSwitchLatencyStats().getCount(), arManager.lastStartUsedCachedConfig()));
+        }
+    }
+
     void updateButtons(boolean allowSave) {
         this.findViewById(R.id.miscButtonBar).setVisibility(allowSave ? View.VISIBLE : View.GONE);
         this.findViewById(R.id.optionsButtonBar).setVisibility(allowSave ? View.VISIBLE : View.GONE);
@@ -168,6 +308,15 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
     public void cancelSavePicture() {
         pictureTimer = 0;
         ++currentPictureID;
+        if (timeLapseScheduler!=null) {
+            endTimeLapse();
+        }
+        if (motionTriggerArmed) {
+            endMotionTrigger();
+        }
+        if (stillnessWaitActive) {
+            endStillnessWait();
+        }
         statusTextField.setText("");
         Toast.makeText(this, getString(R.string.canceledPictureMessage), Toast.LENGTH_SHORT).show();
         updateButtons(true);
@@ -184,39 +333,33 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
         };
     }
 
-    MediaPlayer.OnCompletionListener releaseMediaPlayerFunction = new MediaPlayer.OnCompletionListener() {
-        public void onCompletion(MediaPlayer mp) {
-            mp.release();
-        }
-    };
-
     void playTimerBeep() {
-        int soundResource = R.raw.tick_one;
-        MediaPlayer mp = MediaPlayer.create(this, soundResource);
-        mp.start();
-        mp.setOnCompletionListener(releaseMediaPlayerFunction);
+        audioCuePlayer.play(R.raw.tick_one);
     }
 
     public void decrementTimer(final int pictureID) {
         if (pictureID!=this.currentPictureID) {
             return;
         }
+        countdownScheduler.startFrame();
         boolean takePicture = (pictureTimer==1);
         --pictureTimer;
         if (takePicture) {
-            savePictureNow();
+            // the sound is already decoded, so this returns before autofocus starts
             playTimerBeep();
+            countdownFinished();
         }
         else if (pictureTimer>0) {
             updateTimerMessage();
-            handler.postDelayed(makeDecrementTimerFunction(pictureID), 1000);
+            // delay to the next planned tick, so handler latency doesn't add up over the countdown
+            handler.postDelayed(makeDecrementTimerFunction(pictureID), countdownScheduler.millisUntilNextFrame());
             if (pictureTimer<3) playTimerBeep();
         }
     }
 
     public void savePicture() {
         if (this.pictureDelay==0) {
-            savePictureNow();
+            countdownFinished();
         }
         else {
             savePictureAfterDelay(this.pictureDelay);
@@ -227,26 +370,203 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
         pictureTimer = delay;
         updateTimerMessage();
         currentPictureID++;
-        handler.postDelayed(makeDecrementTimerFunction(currentPictureID), 1000);
+        countdownScheduler = new IntervalScheduler(ONE_SECOND_NANOS, ONE_SECOND_NANOS, delay);
+        countdownScheduler.start();
+        handler.postDelayed(makeDecrementTimerFunction(currentPictureID), countdownScheduler.millisUntilNextFrame());
+
+        updateButtons(false);
+    }
+
+    void countdownFinished() {
+        if (timeLapseInterval > 0) {
+            startTimeLapse();
+        }
+        else if (motionTriggerEnabled) {
+            armMotionTrigger();
+        }
+        else if (stillnessWaitEnabled) {
+            waitForStillness();
+        }
+        else {
+            savePictureNow();
+        }
+    }
+
+    void waitForStillness() {
+        stillnessWaitActive = true;
+        currentPictureID++;
+        statusTextField.setText(getString(R.string.waitingForStillnessMessage));
+        updateButtons(false);
+        stillnessDetector.arm();
+        // the detector only checks its timeout when a frame arrives, so enforce it here as well
+        final int pictureID = currentPictureID;
+        final long timeoutNanos = stillnessDetector.getTimeoutNanos();
+        handler.postDelayed(new Runnable() {
+            public void run() {
+                if (pictureID==currentPictureID) stillnessReached(true, timeoutNanos);
+            }
+        }, timeoutNanos / 1000000);
+    }
+
+    void stillnessReached(boolean timedOut, long waitNanos) {
+        if (!stillnessWaitActive) {
+            return;
+        }
+        Log.i("CamTimer", String.format("%s after %.0fms: %s, %d frames dropped",
+                timedOut ? "Stillness wait timed out" : "Scene still", waitNanos / 1e6,
+                stillnessDetector.debugInfo(), framePipeline.getFramesDropped()));
+        endStillnessWait();
+        savePictureNow();
+    }
+
+    void endStillnessWait() {
+        stillnessDetector.disarm();
+        stillnessWaitActive = false;
+    }
+
+    void armMotionTrigger() {
+        motionTriggerArmed = true;
+        // unattended: keep the screen, and so the camera, on while waiting
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        statusTextField.setText(getString(R.string.waitingForMotionMessage));
+        updateButtons(false);
+        motionDetector.arm();
+    }
+
+    public void motionTriggered() {
+        if (!motionTriggerArmed) {
+            return;
+        }
+        Log.i("CamTimer", String.format("Motion detected (%.3f changed): %s, %d frames dropped",
+                motionDetector.getLastChangedFraction(), motionDetector.debugInfo(), framePipeline.getFramesDropped()));
+        savePictureNow();
+    }
+
+    void endMotionTrigger() {
+        motionDetector.disarm();
+        motionTriggerArmed = false;
+        Log.i("CamTimer", "Motion trigger: " + motionDetector.debugInfo());
+        getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+    }
+
+    Runnable makeTimeLapseFunction(final int pictureID) {
+        return new Runnable() {
+            public void run() {timeLapseTick(pictureID);}
+        };
+    }
 
+    void startTimeLapse() {
+        timeLapseScheduler = new IntervalScheduler(0, timeLapseInterval * ONE_SECOND_NANOS, timeLapseFrameCount);
+        // stay on the planned grid if a capture runs over, rather than shifting every later frame
+        timeLapseScheduler.setSkipMissedFrames(true);
+        timeLapseScheduler.start();
+        currentPictureID++;
+        // the camera is released when the screen turns off, so keep it on for the whole sequence
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         updateButtons(false);
+        timeLapseTick(currentPictureID);
+    }
+
+    public void timeLapseTick(int pictureID) {
+        if (pictureID!=this.currentPictureID || timeLapseScheduler==null) {
+            return;
+        }
+        boolean captureInProgress = (burstSession!=null && !burstSession.isComplete());
+        if (timeLapseScheduler.isFrameDue()) {
+            if (captureInProgress) {
+                timeLapseScheduler.skipFrame();
+            }
+            else {
+                timeLapseFrame = timeLapseScheduler.startFrame();
+                savePictureNow();
+                captureInProgress = true;
+                statusTextField.setText(String.format(getString(R.string.timeLapseStatusFormat),
+                        timeLapseFrame+1, timeLapseScheduler.getFrameCount()));
+            }
+        }
+        if (!timeLapseScheduler.isFinished()) {
+            handler.postDelayed(makeTimeLapseFunction(pictureID), timeLapseScheduler.millisUntilNextFrame());
+        }
+        else if (!captureInProgress) {
+            finishTimeLapse();
+        }
+    }
+
+    void timeLapseFrameCaptured() {
+        long shutterNanos = burstSession.shutterTimeNanos(0);
+        timeLapseScheduler.frameCaptured(timeLapseFrame, shutterNanos);
+        Log.i("CamTimer", String.format("Time lapse frame %d: %.1fms after planned time",
+                timeLapseFrame+1, timeLapseScheduler.captureLatenessNanos(timeLapseFrame) / 1e6));
+        if (timeLapseScheduler.isFinished()) {
+            finishTimeLapse();
+        }
+    }
+
+    void finishTimeLapse() {
+        endTimeLapse();
+        Toast.makeText(this, getString(R.string.timeLapseFinishedMessage), Toast.LENGTH_SHORT).show();
+        statusTextField.setText("");
+        updateButtons(true);
+    }
+
+    void endTimeLapse() {
+        Log.i("CamTimer", "Time lapse: " + timeLapseScheduler.summary());
+        timeLapseScheduler = null;
+        timeLapseFrame = -1;
+        getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
     }
 
     public void savePictureNow() {
         pictureURIs = new ArrayList<Uri>();
+        burstSession = new BurstSession(picturesToTake, lockFocusDuringBurst);
         statusTextField.setText("Taking picture...");
-        arManager.getCamera().autoFocus(this);
+        captureNextShot(arManager.getCamera());
+    }
+
+    void captureNextShot(Camera camera) {
+        boolean autoFocus = burstSession.shouldAutoFocusBeforeNextShot();
+        burstSession.shotRequested(System.nanoTime());
+        if (autoFocus) {
+            camera.autoFocus(this);
+        }
+        else {
+            camera.takePicture(shutterCallback, null, this);
+        }
+    }
+
+    void burstFinished(Camera camera) {
+        if (burstSession.isMultiShot() && burstSession.locksFocusAfterFirstShot()) {
+            CameraUtils.setAutoExposureAndWhiteBalanceLock(arManager.getCameraParameters(), false);
+            arManager.getCameraParameters().commit();
+        }
+        if (burstSession.isMultiShot()) {
+            Log.i("CamTimer", burstSession.summary());
+        }
+        if (timeLapseScheduler!=null) {
+            timeLapseFrameCaptured();
+            return;
+        }
+        if (motionTriggerArmed) {
+            // keep watching until canceled
+            statusTextField.setText(getString(R.string.waitingForMotionMessage));
+            motionDetector.arm();
+            return;
+        }
+        statusTextField.setText("");
+        updateButtons(true);
     }
 
     public void switchCamera() {
         flashButtonConfigured = false;
+        switchingCamera = true;
         arManager.switchToNextCamera();
     }
 
     void configureFlashButton() {
         flashModes.clear();
-        if (CameraUtils.cameraSupportsFlash(arManager.getCamera())) {
-            if (CameraUtils.cameraSupportsAutoFlash(arManager.getCamera())) {
+        List<String> supportedFlashModes = arManager.getSupportedFlashModes();
+        if (supportedFlashModes.contains(FLASH_MODE_ON)) {
+            if (supportedFlashModes.contains(FLASH_MODE_AUTO)) {
                 flashModes.add(FLASH_MODE_AUTO);
             }
             flashModes.add(FLASH_MODE_OFF);
@@ -256,9 +576,7 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
         if (flashModes.size() > 0) {
             flashButton.setVisibility(View.VISIBLE);
             updateFlashMode(0);
-            String mode = flashModes.get(selectedFlashMode);
-            flashButton.setText(flashButtonLabels.get(mode));
-            CameraUtils.setFlashMode(arManager.getCamera(), mode);
+            flashButton.setText(flashButtonLabels.get(flashModes.get(selectedFlashMode)));
         }
         else {
             flashButton.setVisibility(View.GONE);
@@ -308,6 +626,7 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
         if (flashModes.size() > 0) {
             selectedFlashMode = (selectedFlashMode + 1) % flashModes.size();
             updateFlashMode(selectedFlashMode);
+            arManager.getCameraParameters().commit();
         }
     }
 
@@ -315,85 +634,142 @@ public class MainActivity extends Activity implements Camera.PictureCallback, Ca
         selectedFlashMode = mode;
         String modeString = flashModes.get(selectedFlashMode);
         flashButton.setText("Flash: " + modeString.substring(0,1).toUpperCase() + modeString.substring(1));
-        CameraUtils.setFlashMode(arManager.getCamera(), modeString);
+        // applied with the camera's other settings when called during startup
+        CameraUtils.setFlashMode(arManager.getCameraParameters(), modeString);
+    }
+
+    public void cycleTimeLapseInterval() {
+        int index = TIME_LAPSE_INTERVALS.indexOf(timeLapseInterval);
+        timeLapseInterval = TIME_LAPSE_INTERVALS.get((index+1) % TIME_LAPSE_INTERVALS.size());
+        if (timeLapseInterval==0) {
+            timeLapseButton.setText(R.string.timeLapseButtonLabelOff);
+        }
+        else {
+            timeLapseButton.setText(String.format(getString(R.string.timeLapseButtonLabelFormat), timeLapseInterval));
+        }
+        updateTimeLapseCountButton();
+    }
+
+    public void cycleTimeLapseFrameCount() {
+        int index = TIME_LAPSE_FRAME_COUNTS.indexOf(timeLapseFrameCount);
+        timeLapseFrameCount = TIME_LAPSE_FRAME_COUNTS.get((index+1) % TIME_LAPSE_FRAME_COUNTS.size());
+        updateTimeLapseCountButton();
+    }
+
+    // the picture limit is only relevant, and only shown, while time lapse is on
+    void updateTimeLapseCountButton() {
+        timeLapseCountButton.setText(String.format(getString(R.string.timeLapseCountButtonLabelFormat), timeLapseFrameCount));
+        timeLapseCountButton.setVisibility(timeLapseInterval > 0 ? View.VISIBLE : View.GONE);
+    }
+
+    public void toggleMotionTrigger() {
+        motionTriggerEnabled = !motionTriggerEnabled;
+        motionTriggerButton.setText(motionTriggerEnabled ? R.string.motionTriggerButtonLabelOn : R.string.motionTriggerButtonLabelOff);
+    }
+
+    public void toggleStillnessWait() {
+        stillnessWaitEnabled = !stillnessWaitEnabled;
+        stillnessButton.setText(stillnessWaitEnabled ? R.string.stillnessButtonLabelOn : R.string.stillnessButtonLabelOff);
     }
 
     public void toggleNumberOfPictures() {
-        picturesToTake = (picturesToTake==1) ? 4 : 1;
-        numberOfPicturesButton.setText(picturesToTake==1 ? R.string.singleImageButtonLabel : R.string.multiImageButtonLabel);
+        int index = BURST_SIZES.indexOf(picturesToTake);
+        picturesToTake = BURST_SIZES.get((index+1) % BURST_SIZES.size());
+        if (picturesToTake==1) {
+            numberOfPicturesButton.setText(R.string.singleImageButtonLabel);
+        }
+        else {
+            numberOfPicturesButton.setText(String.format(getString(R.string.burstImageButtonLabelFormat), picturesToTake));
+        }
     }
 
 
     @Override
     public void onAutoFocus(boolean success, Camera camera) {
-        camera.takePicture(null, null, this);
+        if (burstSession.isMultiShot() && burstSession.locksFocusAfterFirstShot()) {
+            // later shots reuse this focus, exposure and white balance
+            CameraUtils.setAutoExposureAndWhiteBalanceLock(arManager.getCameraParameters(), true);
+            arManager.getCameraParameters().commit();
+        }
+        camera.takePicture(shutterCallback, null, this);
     }
 
     @Override
     public void onPictureTaken(byte[] data, final Camera camera) {
-        int pictureNum = (picturesToTake > 1) ? pictureURIs.size() + 1 : 0;
-        pictureURI = saveImageData(data, pictureNum);
-        statusTextField.setText("");
-        updateButtons(true);
+        // the write happens in the background, so the preview can resume immediately
         camera.startPreview();
+        int shotNumber = burstSession.pictureReceived(System.nanoTime());
+        int pictureNum = burstSession.isMultiShot() ? shotNumber : 0;
+        // time lapse and motion triggered pictures are only reviewed in the library; opening a
+        // review screen would pause this activity, which cancels the sequence
+        boolean unattended = (timeLapseScheduler!=null || motionTriggerArmed);
+        int reviewCount = unattended ? 0 : burstSession.getShotCount();
+        File imageFile = imageFileForPicture(pictureNum);
+        if (reviewCount>1 && reviewCount<=MAX_GRID_PICTURES) {
+            // decode for the review grid now, in parallel with the rest of the burst, not when it opens
+            captureDecoder.decode(data, Uri.fromFile(imageFile), reviewDecodeSize, reviewDecodeSize, System.nanoTime());
+        }
+        saveImageData(data, imageFile, pictureURIs, reviewCount);
 
-        if (pictureURI!=null) {
-            pictureURIs.add(pictureURI);
-            if (pictureURIs.size() >= picturesToTake) {
-                if (picturesToTake==1) {
-                    ViewImageActivity.startActivityWithImageURI(this, pictureURI, "image/jpeg");
+        if (burstSession.hasMoreShots()) {
+            // request the next shot as soon as the preview is running again
+            handler.post(new Runnable() {
+                public void run() {
+                    captureNextShot(camera);
                 }
-                else {
-                    ViewImageGridActivity.startActivityWithImageURIs(this, pictureURIs);
-                }
-            }
-            else {
-                handler.postDelayed(new Runnable() {
-                    public void run() {
-                        camera.autoFocus(MainActivity.this);
-                    }
-                }, 100);
-            }
-            try {
-                Intent newPictureIntent = new Intent("android.hardware.action.NEW_PICTURE");
-                newPictureIntent.setDataAndType(pictureURI, "image/jpeg");
-                this.sendBroadcast(newPictureIntent);
-            }
-            catch(Exception ex) {
-                Log.e("CamTimer", "Error broadcasting new picture", ex);
-            }
+            });
+        }
+        else {
+            burstCompletedNanos = System.nanoTime();
+            burstFinished(camera);
         }
     }
 
+    File imageFileForPicture(int pictureNum) {
+        // re-armed motion captures can come less than a second apart
+        return pictureFileNamer.fileForPicture(new Date(), pictureNum);
+    }
 
-
-    Uri saveImageData(byte[] data, int pictureNum) {
-        try {
-            File dir = new File(savedImageDirectory);
-            if (!dir.exists()) {
-                dir.mkdirs();
+    void saveImageData(final byte[] data, File imageFile, final List<Uri> burstURIs, final int burstSize) {
+        imageWriteQueue.enqueue(data, imageFile, new ImageWriteQueue.WriteCallback() {
+            public void writeCompleted(File file, long writeNanos) {
+                // the library thumbnail comes from the data still in memory, not from re-reading the file
+                captureDecoder.createThumbnail(data, Uri.fromFile(file), LibraryActivity.CELL_WIDTH, LibraryActivity.CELL_HEIGHT);
+                pictureSaved(Uri.fromFile(file), file.getPath(), burstURIs, burstSize);
             }
-            if (!dir.isDirectory()) {
-                Toast.makeText(this, "Error saving picture: can't create directory " + dir.getPath(), Toast.LENGTH_LONG).show();
-                return null;
-            }
-            String filename = String.format("IMG_" + dateInFilename.format(new Date()));
-            if (pictureNum > 0) filename += ("-" + pictureNum);
-            filename += ".jpg";
-
-            String path = savedImageDirectory + File.separator + filename;
-            FileOutputStream out = new FileOutputStream(path);
-            out.write(data);
-            out.close();
 
-            AndroidUtils.scanSavedMediaFile(this, path);
-            Toast.makeText(this, getString(R.string.savedPictureMessage), Toast.LENGTH_SHORT).show();
+            public void writeFailed(File file, Exception ex) {
+                Toast.makeText(MainActivity.this, "Error saving picture: " + ex.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
+    }
 
-            return Uri.fromFile(new File(path));
+    void pictureSaved(Uri savedURI, String path, List<Uri> burstURIs, int burstSize) {
+        pictureURI = savedURI;
+        mediaScanBatcher.scanFile(path);
+        Toast.makeText(this, getString(R.string.savedPictureMessage), Toast.LENGTH_SHORT).show();
+
+        burstURIs.add(pictureURI);
+        // a write that finishes after the activity is closed shouldn't open a new screen
+        if (isFinishing()) return;
+        if (burstSize > 0 && burstURIs.size() >= burstSize) {
+            if (burstSize==1) {
+                ViewImageActivity.startActivityWithImageURI(this, pictureURI, "image/jpeg");
+            }
+            else if (burstSize<=MAX_GRID_PICTURES) {
+                ViewImageGridActivity.startActivityWithImageURIs(this, burstURIs, burstCompletedNanos);
+            }
+            else {
+                openLibrary();
+            }
+        }
+        try {
+            Intent newPictureIntent = new Intent("android.hardware.action.NEW_PICTURE");
+            newPictureIntent.setDataAndType(pictureURI, "image/jpeg");
+            this.sendBroadcast(newPictureIntent);
         }
         catch(Exception ex) {
-            Toast.makeText(this, "Error saving picture: " + ex.getClass().getName(), Toast.LENGTH_LONG).show();
-            return null;
+            Log.e("CamTimer", "Error broadcasting new picture", ex);
         }
     }
 
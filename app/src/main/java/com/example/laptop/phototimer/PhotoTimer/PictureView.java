@@ -9,25 +9,59 @@ import android.net.Uri;
 import android.util.AttributeSet;
 import android.view.View;
 
-import com.example.laptop.phototimer.util.AndroidUtils;
+import com.example.laptop.phototimer.util.AsyncImageLoader;
+import com.example.laptop.phototimer.util.DecodeScheduler;
+import com.example.laptop.phototimer.util.ScaledBitmapCache;
 
 public class PictureView extends View {
 
+    public static interface LoadListener {
+        void pictureLoaded(PictureView view);
+    }
+
     public PictureView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        borderPaint.setStyle(Paint.Style.STROKE);
     }
 
     Bitmap bitmap;
     float cornerImageRatio = 1.0f;
     boolean drawBorder = false;
-    Uri imageURI, lastImageURI;
+    Uri imageURI;
+
+    AsyncImageLoader imageLoader;
+    ScaledBitmapCache bitmapCache;
+    LoadListener loadListener;
+    DecodeScheduler<?, Bitmap>.Request pendingLoad;
+    boolean fullResolution = false;
+
+    // reused by onDraw
+    final Rect imageRect = new Rect();
+    final Paint borderPaint = new Paint();
+
+    /** Bitmaps are decoded by the loader through the cache; without a loader nothing is shown. */
+    public void setImageLoader(AsyncImageLoader loader, ScaledBitmapCache cache) {
+        this.imageLoader = loader;
+        this.bitmapCache = cache;
+    }
+
+    public void setLoadListener(LoadListener listener) {
+        this.loadListener = listener;
+    }
 
     public void setImageFromURI(Uri newImageURI) {
-        this.lastImageURI = this.imageURI;
+        cancelPendingLoad();
         this.imageURI = newImageURI;
-        if (this.imageURI==null) {
-            this.bitmap = null;
-        }
+        this.bitmap = null;
+        this.fullResolution = false;
+        requestBitmap();
+        this.invalidate();
+    }
+
+    /** Shows a smaller bitmap, such as a cached thumbnail, until the view's own decode arrives. */
+    public void setPlaceholderBitmap(Bitmap placeholder) {
+        if (imageURI==null || fullResolution) return;
+        this.bitmap = placeholder;
         this.invalidate();
     }
 
@@ -35,62 +69,94 @@ public class PictureView extends View {
         return imageURI;
     }
 
+    public boolean hasFullResolutionBitmap() {
+        return fullResolution;
+    }
+
     @Override
-    protected void onDraw (Canvas canvas) {
-        if (imageURI!=null) {
-            if (!imageURI.equals(lastImageURI)) {
-                try {
-                    Rect imageRect = rectForImage();
-                    bitmap = AndroidUtils.scaledBitmapFromURIWithMinimumSize(this.getContext(), imageURI, imageRect.width(), imageRect.height());
-                }
-                catch(Exception ex) {
-                    bitmap = null;
-                }
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (!fullResolution) requestBitmap();
+    }
+
+    void requestBitmap() {
+        if (imageURI==null || imageLoader==null || getWidth()<=0 || getHeight()<=0) return;
+        cancelPendingLoad();
+        Bitmap cached = bitmapCache.getInMemoryScaledBitmap(imageURI, getWidth(), getHeight());
+        if (cached!=null) {
+            showLoadedBitmap(cached);
+            return;
+        }
+        final Uri requestedURI = imageURI;
+        pendingLoad = imageLoader.loadBitmapAsync(bitmapCache, imageURI, getWidth(), getHeight(), new DecodeScheduler.Callback<Bitmap>() {
+            public void decodeCompleted(Bitmap result) {
+                // called on the main thread
+                if (!requestedURI.equals(imageURI)) return;
+                pendingLoad = null;
+                if (result!=null) showLoadedBitmap(result);
             }
-            if (bitmap!=null) {
-                Rect imageRect = rectForImage();
-
-                if (drawBorder) {
-                    Paint cornerEdgePaint = new Paint();
-                    cornerEdgePaint.setStyle(Paint.Style.STROKE);
-                    cornerEdgePaint.setARGB(255,0,0,0);
-                    canvas.drawRect(imageRect, cornerEdgePaint);
-
-                    cornerEdgePaint.setARGB(255,255,255,255);
-                    imageRect.left += 1;
-                    imageRect.bottom -= 1;
-                    canvas.drawRect(imageRect, cornerEdgePaint);
-
-                    imageRect.left += 1;
-                    imageRect.bottom -= 1;
-                }
-                canvas.drawBitmap(bitmap, null, imageRect, null);
+        });
+    }
+
+    void cancelPendingLoad() {
+        if (pendingLoad!=null) {
+            pendingLoad.cancel();
+            pendingLoad = null;
+        }
+    }
+
+    void showLoadedBitmap(Bitmap loaded) {
+        this.bitmap = loaded;
+        this.fullResolution = true;
+        this.invalidate();
+        if (loadListener!=null) loadListener.pictureLoaded(this);
+    }
+
+    @Override
+    protected void onDraw (Canvas canvas) {
+        if (imageURI!=null && bitmap!=null) {
+            rectForImage(imageRect);
+
+            if (drawBorder) {
+                borderPaint.setARGB(255,0,0,0);
+                canvas.drawRect(imageRect, borderPaint);
+
+                borderPaint.setARGB(255,255,255,255);
+                imageRect.left += 1;
+                imageRect.bottom -= 1;
+                canvas.drawRect(imageRect, borderPaint);
+
+                imageRect.left += 1;
+                imageRect.bottom -= 1;
             }
+            canvas.drawBitmap(bitmap, null, imageRect, null);
         }
     }
 
-    Rect rectForImage() {
+    void rectForImage(Rect rect) {
         if (bitmap!=null) {
             float bitmapRatio = 1.0f*bitmap.getWidth() / bitmap.getHeight();
             float viewRatio = 1.0f*this.getWidth() / this.getHeight();
             if (bitmapRatio < viewRatio) {
                 int width = (int)(this.getHeight()*bitmapRatio);
                 int xstart = (this.getWidth() - width) / 2;
-                return new Rect(xstart, 0, xstart + width, this.getHeight());
+                rect.set(xstart, 0, xstart + width, this.getHeight());
+                return;
             }
             if (bitmapRatio > viewRatio) {
                 int height = (int)(this.getWidth()/bitmapRatio);
                 int ystart = (this.getHeight() - height) / 2;
-                return new Rect(0, ystart, this.getWidth(), ystart + height);
+                rect.set(0, ystart, this.getWidth(), ystart + height);
+                return;
             }
         }
-        return new Rect(0, 0, this.getWidth(), this.getHeight());
+        rect.set(0, 0, this.getWidth(), this.getHeight());
     }
 
     public boolean isPointInCornerImage(float x, float y) {
         if (bitmap==null || cornerImageRatio<=0) return false;
-        Rect cornerImageRect = rectForImage();
-        return cornerImageRect.contains((int)x, (int)y);
+        rectForImage(imageRect);
+        return imageRect.contains((int)x, (int)y);
     }
 
 }
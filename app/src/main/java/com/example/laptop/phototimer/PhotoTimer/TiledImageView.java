@@ -0,0 +1,288 @@
+package com.example.laptop.phototimer.PhotoTimer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.v4.util.LruCache;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import com.example.laptop.phototimer.util.AndroidUtils;
+import com.example.laptop.phototimer.util.DecodePlanner;
+import com.example.laptop.phototimer.util.DecodeScheduler;
+import com.example.laptop.phototimer.util.FrameTimeStats;
+import com.example.laptop.phototimer.util.TileLayout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Zoomable view of a large image. A low resolution base bitmap covers the whole image. When zoomed in
+ * past its resolution, only the visible tiles are decoded with BitmapRegionDecoder, at the sample size
+ * the zoom needs, on a background thread. Tiles of all sample sizes share one LRU cache bounded in
+ * bytes. Until a tile arrives, its cached parent tile or the base bitmap is drawn in its place.
+ */
+public class TiledImageView extends View {
+
+    static int TILE_CACHE_HEAP_FRACTION = 8;
+    static int MIN_TILE_CACHE_SIZE = 4*1024*1024;
+    static float MAX_SCALE = 2.0f;
+    static int TIMING_WINDOW = 64;
+
+    public TiledImageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                panBy(distanceX, distanceY);
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                if (scale > minScale * 1.01f) {
+                    resetZoom();
+                }
+                else {
+                    zoomBy(Math.max(1.0f, 2 * minScale) / scale, e.getX(), e.getY());
+                }
+                return true;
+            }
+        });
+    }
+
+    final LruCache<TileLayout.TileKey, Bitmap> tileCache = new LruCache<TileLayout.TileKey, Bitmap>(tileCacheSize()) {
+        @Override protected int sizeOf(TileLayout.TileKey key, Bitmap bitmap) {
+            return AndroidUtils.getBitmapByteCount(bitmap);
+        }
+    };
+    final Map<TileLayout.TileKey, DecodeScheduler<TileLayout.TileKey, Bitmap>.Request> pendingTiles =
+            new HashMap<TileLayout.TileKey, DecodeScheduler<TileLayout.TileKey, Bitmap>.Request>();
+    // read by decode threads; cleared with the tileCache lock held
+    volatile DecodeScheduler<TileLayout.TileKey, Bitmap> tileScheduler;
+    BitmapRegionDecoder regionDecoder;
+    TileLayout tileLayout;
+    final FrameTimeStats tileDecodeTimes = new FrameTimeStats(TIMING_WINDOW);
+
+    Bitmap baseBitmap;
+    int imageWidth, imageHeight;
+    float scale, minScale;
+    float offsetX, offsetY;
+    ScaleGestureDetector scaleDetector;
+    GestureDetector gestureDetector;
+
+    // reused by onDraw
+    final RectF destRect = new RectF();
+    final int[] tileBounds = new int[4];
+    final List<TileLayout.TileKey> visibleTiles = new ArrayList<TileLayout.TileKey>();
+    final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    static int tileCacheSize() {
+        return (int)Math.max(MIN_TILE_CACHE_SIZE, Runtime.getRuntime().maxMemory() / TILE_CACHE_HEAP_FRACTION);
+    }
+
+    /** Shows a placeholder, normally a cached thumbnail, until setImageSource is called. */
+    public void setPreviewBitmap(Bitmap bitmap) {
+        if (tileLayout!=null || bitmap==null) return;
+        baseBitmap = bitmap;
+        imageWidth = bitmap.getWidth();
+        imageHeight = bitmap.getHeight();
+        resetZoom();
+    }
+
+    /**
+     * Sets the full image. base is a subsampled decode of the whole image. The view takes ownership
+     * of decoder, which may be null if region decoding isn't available, and recycles it in release().
+     */
+    public void setImageSource(final BitmapRegionDecoder decoder, int width, int height, Bitmap base) {
+        release();
+        regionDecoder = decoder;
+        imageWidth = width;
+        imageHeight = height;
+        tileLayout = new TileLayout(width, height);
+        if (base!=null) baseBitmap = base;
+        if (decoder!=null) {
+            final TileLayout layout = tileLayout;
+            // BitmapRegionDecoder serializes decodes, so more threads wouldn't help
+            tileScheduler = new DecodeScheduler<TileLayout.TileKey, Bitmap>(new DecodeScheduler.Decoder<TileLayout.TileKey, Bitmap>() {
+                public Bitmap decode(TileLayout.TileKey key) {
+                    long startTime = System.nanoTime();
+                    int[] bounds = layout.tileBounds(key);
+                    BitmapFactory.Options options = new BitmapFactory.Options();
+                    options.inSampleSize = key.getSampleSize();
+                    options.inPreferredConfig = Bitmap.Config.RGB_565;
+                    Bitmap tile = decoder.decodeRegion(new Rect(bounds[0], bounds[1], bounds[2], bounds[3]), options);
+                    synchronized(tileDecodeTimes) {
+                        tileDecodeTimes.recordInterval(System.nanoTime() - startTime);
+                    }
+                    return tile;
+                }
+            }, 1);
+        }
+        resetZoom();
+    }
+
+    public void release() {
+        synchronized(tileCache) {
+            if (tileScheduler!=null) {
+                tileScheduler.shutdown();
+                tileScheduler = null;
+            }
+            tileCache.evictAll();
+        }
+        pendingTiles.clear();
+        if (regionDecoder!=null) {
+            regionDecoder.recycle();
+            regionDecoder = null;
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        resetZoom();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+        if (!scaleDetector.isInProgress()) {
+            gestureDetector.onTouchEvent(event);
+        }
+        return true;
+    }
+
+    void resetZoom() {
+        if (imageWidth<=0 || imageHeight<=0 || getWidth()<=0 || getHeight()<=0) return;
+        minScale = Math.min(1.0f * getWidth() / imageWidth, 1.0f * getHeight() / imageHeight);
+        scale = minScale;
+        clampOffsets();
+        invalidate();
+    }
+
+    void zoomBy(float factor, float focusX, float focusY) {
+        if (minScale<=0) return;
+        float newScale = Math.max(minScale, Math.min(Math.max(MAX_SCALE, minScale), scale * factor));
+        // keep the image point under the focus in place
+        offsetX = focusX - (focusX - offsetX) * newScale / scale;
+        offsetY = focusY - (focusY - offsetY) * newScale / scale;
+        scale = newScale;
+        clampOffsets();
+        invalidate();
+    }
+
+    void panBy(float dx, float dy) {
+        offsetX -= dx;
+        offsetY -= dy;
+        clampOffsets();
+        invalidate();
+    }
+
+    void clampOffsets() {
+        float scaledWidth = imageWidth * scale;
+        float scaledHeight = imageHeight * scale;
+        offsetX = (scaledWidth <= getWidth()) ? (getWidth() - scaledWidth) / 2 :
+                Math.max(getWidth() - scaledWidth, Math.min(0, offsetX));
+        offsetY = (scaledHeight <= getHeight()) ? (getHeight() - scaledHeight) / 2 :
+                Math.max(getHeight() - scaledHeight, Math.min(0, offsetY));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (baseBitmap==null || scale<=0) return;
+        destRect.set(offsetX, offsetY, offsetX + imageWidth * scale, offsetY + imageHeight * scale);
+        canvas.drawBitmap(baseBitmap, null, destRect, bitmapPaint);
+        if (tileScheduler==null) return;
+
+        int sampleSize = TileLayout.sampleSizeForScale(scale);
+        if (DecodePlanner.sampledDimension(imageWidth, sampleSize) <= baseBitmap.getWidth()) {
+            // the base bitmap already has enough detail
+            visibleTiles.clear();
+        }
+        else {
+            tileLayout.visibleTiles(sampleSize, -offsetX / scale, -offsetY / scale,
+                    (getWidth() - offsetX) / scale, (getHeight() - offsetY) / scale, visibleTiles);
+        }
+        cancelHiddenTiles();
+
+        // coarser tiles first, so they never cover finer ones
+        for(int i=0; i<visibleTiles.size(); i++) {
+            TileLayout.TileKey key = visibleTiles.get(i);
+            if (tileCache.get(key)==null) {
+                requestTile(key);
+                TileLayout.TileKey parent = key.parent();
+                Bitmap parentTile = tileCache.get(parent);
+                if (parentTile!=null) drawTile(canvas, parent, parentTile);
+            }
+        }
+        for(int i=0; i<visibleTiles.size(); i++) {
+            TileLayout.TileKey key = visibleTiles.get(i);
+            Bitmap tile = tileCache.get(key);
+            if (tile!=null) drawTile(canvas, key, tile);
+        }
+    }
+
+    void drawTile(Canvas canvas, TileLayout.TileKey key, Bitmap tile) {
+        tileLayout.tileBounds(key, tileBounds);
+        destRect.set(offsetX + tileBounds[0] * scale, offsetY + tileBounds[1] * scale,
+                offsetX + tileBounds[2] * scale, offsetY + tileBounds[3] * scale);
+        canvas.drawBitmap(tile, null, destRect, bitmapPaint);
+    }
+
+    void requestTile(final TileLayout.TileKey key) {
+        if (pendingTiles.containsKey(key)) return;
+        final DecodeScheduler<TileLayout.TileKey, Bitmap> scheduler = tileScheduler;
+        pendingTiles.put(key, scheduler.submit(key, new DecodeScheduler.Callback<Bitmap>() {
+            public void decodeCompleted(Bitmap tile) {
+                // called on the decode thread; a tile of a released image must not reach the cache
+                synchronized(tileCache) {
+                    if (tile!=null && scheduler==tileScheduler) tileCache.put(key, tile);
+                }
+                post(new Runnable() {
+                    public void run() {
+                        if (scheduler!=tileScheduler) return;
+                        pendingTiles.remove(key);
+                        invalidate();
+                    }
+                });
+            }
+        }));
+    }
+
+    void cancelHiddenTiles() {
+        for(Iterator<Map.Entry<TileLayout.TileKey, DecodeScheduler<TileLayout.TileKey, Bitmap>.Request>> it =
+                pendingTiles.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<TileLayout.TileKey, DecodeScheduler<TileLayout.TileKey, Bitmap>.Request> entry = it.next();
+            if (!visibleTiles.contains(entry.getKey()) && entry.getValue().cancel()) {
+                it.remove();
+            }
+        }
+    }
+
+    public String debugInfo() {
+        synchronized(tileDecodeTimes) {
+            return String.format("%d tiles decoded, median %.1fms p95 %.1fms, tile cache %dKB of %dKB, %d evictions",
+                    tileDecodeTimes.getTotalIntervals(), tileDecodeTimes.medianNanos() / 1e6,
+                    tileDecodeTimes.percentileNanos(95) / 1e6, tileCache.size() / 1024, tileCache.maxSize() / 1024,
+                    tileCache.evictionCount());
+        }
+    }
+}
@@ -2,22 +2,35 @@ package com.example.laptop.phototimer.PhotoTimer;
 
 import android.app.Activity;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.Window;
-import android.widget.ImageView;
 
 import com.example.laptop.phototimer.util.AndroidUtils;
+import com.example.laptop.phototimer.util.DecodePlanner;
+import com.example.laptop.phototimer.util.ProgressiveLoadMetrics;
+import com.example.laptop.phototimer.util.ScaledBitmapCache;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
 public class ViewImageActivity extends Activity {
 
     public static final int DELETE_RESULT = Activity.RESULT_FIRST_USER;
 
-    ImageView imageView;
+    TiledImageView imageView;
     Uri imageUri;
+    ScaledBitmapCache bitmapCache;
+    LoadImageTask loadImageTask;
+    ProgressiveLoadMetrics loadMetrics;
 
     public static Intent startActivityWithImageURI(Activity parent, Uri imageURI, String type) {
         Intent intent = new Intent(parent, ViewImageActivity.class);
@@ -29,25 +42,117 @@ public class ViewImageActivity extends Activity {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        loadMetrics = new ProgressiveLoadMetrics("Image viewer", 1, System.nanoTime());
         requestWindowFeature(Window.FEATURE_NO_TITLE);
         setContentView(R.layout.imageview);
 
-        imageView = (ImageView)findViewById(R.id.imageView);
+        imageView = (TiledImageView)findViewById(R.id.imageView);
         imageUri = getIntent().getData();
+        if ("file".equals(imageUri.getScheme())) {
+            // the same thumbnail directory the library uses
+            String thumbnailDirectory = new File(imageUri.getPath()).getParent() + File.separator + "thumbnails";
+            bitmapCache = new ScaledBitmapCache(this, thumbnailDirectory);
+        }
 
         DisplayMetrics dm = new DisplayMetrics();
         getWindowManager().getDefaultDisplay().getMetrics(dm);
-        try {
-            imageView.setImageBitmap(AndroidUtils.scaledBitmapFromURIWithMinimumSize(this, imageUri,
-                    dm.widthPixels, dm.heightPixels));
-        }
-        catch(Exception ex) {}
+        loadImageTask = new LoadImageTask(dm.widthPixels, dm.heightPixels);
+        loadImageTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 
         AndroidUtils.bindOnClickListener(this, this.findViewById(R.id.deleteImageButton), "deleteImage");
         AndroidUtils.bindOnClickListener(this, this.findViewById(R.id.shareImageButton), "shareImage");
         AndroidUtils.bindOnClickListener(this, this.findViewById(R.id.exitViewImageButton), "goBack");
     }
 
+    @Override
+    protected void onDestroy() {
+        loadImageTask.cancel(false);
+        Log.i("CamTimer", "Image viewer: " + imageView.debugInfo());
+        imageView.release();
+        super.onDestroy();
+    }
+
+    /**
+     * Publishes the cached thumbnail, if there is one, then opens a region decoder and decodes the
+     * whole image at the sample size that fills the screen. Zoomed-in detail is decoded by the view.
+     */
+    class LoadImageTask extends AsyncTask<Void, Bitmap, Bitmap> {
+        final int screenWidth, screenHeight;
+        BitmapRegionDecoder regionDecoder;
+        int imageWidth, imageHeight;
+
+        LoadImageTask(int screenWidth, int screenHeight) {
+            this.screenWidth = screenWidth;
+            this.screenHeight = screenHeight;
+        }
+
+        @Override protected Bitmap doInBackground(Void... args) {
+            if (bitmapCache!=null) {
+                Bitmap thumbnail = bitmapCache.getCachedScaledBitmap(imageUri, 1, 1);
+                if (thumbnail!=null) publishProgress(thumbnail);
+            }
+            try {
+                regionDecoder = openRegionDecoder();
+            }
+            catch(Exception ex) {
+                regionDecoder = null;
+            }
+            if (regionDecoder!=null) {
+                imageWidth = regionDecoder.getWidth();
+                imageHeight = regionDecoder.getHeight();
+                // the image is fitted inside the screen, so only the fitted size is needed
+                float fit = Math.min(1.0f * screenWidth / imageWidth, 1.0f * screenHeight / imageHeight);
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = DecodePlanner.sampleSizeForMinimumSize(imageWidth, imageHeight,
+                        (int)Math.ceil(imageWidth * fit), (int)Math.ceil(imageHeight * fit));
+                return regionDecoder.decodeRegion(new Rect(0, 0, imageWidth, imageHeight), options);
+            }
+            try {
+                Bitmap bitmap = AndroidUtils.scaledBitmapFromURIWithMinimumSize(ViewImageActivity.this, imageUri,
+                        screenWidth, screenHeight);
+                imageWidth = bitmap.getWidth();
+                imageHeight = bitmap.getHeight();
+                return bitmap;
+            }
+            catch(Exception ex) {
+                return null;
+            }
+        }
+
+        BitmapRegionDecoder openRegionDecoder() throws IOException {
+            if ("file".equals(imageUri.getScheme())) {
+                return BitmapRegionDecoder.newInstance(imageUri.getPath(), false);
+            }
+            InputStream input = getContentResolver().openInputStream(imageUri);
+            try {
+                return BitmapRegionDecoder.newInstance(input, false);
+            }
+            finally {
+                input.close();
+            }
+        }
+
+        @Override protected void onProgressUpdate(Bitmap... thumbnails) {
+            imageView.setPreviewBitmap(thumbnails[0]);
+            loadMetrics.placeholderShown(0, System.nanoTime());
+        }
+
+        @Override protected void onPostExecute(Bitmap base) {
+            if (base!=null) {
+                imageView.setImageSource(regionDecoder, imageWidth, imageHeight, base);
+                loadMetrics.fullResolutionShown(0, System.nanoTime());
+                Log.i("CamTimer", loadMetrics.summary());
+            }
+            else if (regionDecoder!=null) {
+                regionDecoder.recycle();
+            }
+        }
+
+        @Override protected void onCancelled(Bitmap base) {
+            if (regionDecoder!=null) regionDecoder.recycle();
+        }
+    }
+
     public void goBack() {
         this.finish();
     }
@@ -3,12 +3,19 @@ package com.example.laptop.phototimer.PhotoTimer;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.View;
 import android.view.Window;
 
 import com.example.laptop.phototimer.util.AndroidUtils;
+import com.example.laptop.phototimer.util.AsyncImageLoader;
+import com.example.laptop.phototimer.util.DecodePlanner;
+import com.example.laptop.phototimer.util.ProgressiveLoadMetrics;
+import com.example.laptop.phototimer.util.ScaledBitmapCache;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -24,19 +31,94 @@ public class ViewImageGridActivity extends Activity {
 
     int viewImageIndex;
 
+    static int MAX_GRID_IMAGES = 4;
+
+    ScaledBitmapCache bitmapCache;
+    AsyncImageLoader imageLoader;
+    LoadThumbnailsTask loadThumbnailsTask;
+    ProgressiveLoadMetrics loadMetrics;
+    boolean loadTimesLogged = false;
+    long captureNanos;
+
+    static class LoadedImage {
+        final int index;
+        final Bitmap bitmap;
+
+        LoadedImage(int index, Bitmap bitmap) {
+            this.index = index;
+            this.bitmap = bitmap;
+        }
+    }
+
+    /**
+     * Publishes the cached thumbnails from the disk tier as placeholders while the grid cells decode
+     * their own bitmaps.
+     */
+    class LoadThumbnailsTask extends AsyncTask<Void, LoadedImage, Void> {
+        @Override protected Void doInBackground(Void... args) {
+            for(int i=0; i<imageURIs.size() && !isCancelled(); i++) {
+                Bitmap thumbnail = bitmapCache.getCachedScaledBitmap(imageURIs.get(i), 1, 1);
+                if (thumbnail!=null) publishProgress(new LoadedImage(i, thumbnail));
+            }
+            return null;
+        }
+
+        @Override protected void onProgressUpdate(LoadedImage... images) {
+            LoadedImage image = images[0];
+            PictureView view = imageViews.get(image.index);
+            // skip deleted images, and thumbnails that arrive after the cell's own decode
+            if (view.getImageURI()==null || view.hasFullResolutionBitmap()) return;
+            view.setPlaceholderBitmap(image.bitmap);
+            loadMetrics.placeholderShown(image.index, System.nanoTime());
+        }
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        long openedNanos = System.nanoTime();
         requestWindowFeature(Window.FEATURE_NO_TITLE);
         setContentView(R.layout.imagegrid);
 
         imageURIs = getIntent().getParcelableArrayListExtra("images");
+        captureNanos = getIntent().getLongExtra("captureNanos", -1);
         imageViews = Arrays.asList((PictureView)findViewById(R.id.gridImageView1), (PictureView)findViewById(R.id.gridImageView2),
                 (PictureView)findViewById(R.id.gridImageView3), (PictureView)findViewById(R.id.gridImageView4));
 
+        if (imageURIs.size()>0 && "file".equals(imageURIs.get(0).getScheme())) {
+            String thumbnailDirectory = new File(imageURIs.get(0).getPath()).getParent() + File.separator + "thumbnails";
+            bitmapCache = new ScaledBitmapCache(this, thumbnailDirectory);
+        }
+        else {
+            // memory tier only
+            bitmapCache = new ScaledBitmapCache(this, new ScaledBitmapCache.ThumbnailLocator() {
+                public File thumbnailFileForUri(Uri imageUri) {
+                    return null;
+                }
+            });
+        }
+        loadMetrics = new ProgressiveLoadMetrics("Image grid", imageURIs.size(), openedNanos);
+        // all cells decode at once, each on its own core where there are enough
+        imageLoader = new AsyncImageLoader(DecodePlanner.decodeThreadCount(Runtime.getRuntime().availableProcessors(), MAX_GRID_IMAGES));
+        PictureView.LoadListener loadListener = new PictureView.LoadListener() {
+            public void pictureLoaded(PictureView view) {
+                loadMetrics.fullResolutionShown(imageViews.indexOf(view), System.nanoTime());
+                if (!loadTimesLogged && loadMetrics.timeToFullResolutionNanos()>=0) {
+                    loadTimesLogged = true;
+                    String captureTime = (captureNanos<0) ? "" : String.format(", grid complete %.1fms after capture",
+                            (System.nanoTime() - captureNanos) / 1e6);
+                    Log.i("CamTimer", loadMetrics.summary() + captureTime);
+                }
+            }
+        };
         for(int i=0; i<imageURIs.size(); i++) {
-            imageViews.get(i).setImageFromURI(imageURIs.get(i));
+            PictureView view = imageViews.get(i);
+            view.setImageLoader(imageLoader, bitmapCache);
+            view.setLoadListener(loadListener);
+            view.setImageFromURI(imageURIs.get(i));
         }
+        loadThumbnailsTask = new LoadThumbnailsTask();
+        loadThumbnailsTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 
         deleteButtons = Arrays.asList(findViewById(R.id.gridDeleteButton1), findViewById(R.id.gridDeleteButton2),
                 findViewById(R.id.gridDeleteButton3), findViewById(R.id.gridDeleteButton4));
@@ -53,9 +135,18 @@ public class ViewImageGridActivity extends Activity {
         AndroidUtils.bindOnClickListener(this, viewButtons.get(3), "viewImage3");
     }
 
-    public static Intent startActivityWithImageURIs(Context parent, List<Uri> imageURIs) {
+    @Override
+    protected void onDestroy() {
+        loadThumbnailsTask.cancel(false);
+        imageLoader.shutdown();
+        super.onDestroy();
+    }
+
+    /** captureNanos is the System.nanoTime at which the last picture was taken, or -1 if unknown. */
+    public static Intent startActivityWithImageURIs(Context parent, List<Uri> imageURIs, long captureNanos) {
         Intent intent = new Intent(parent, ViewImageGridActivity.class);
         intent.putParcelableArrayListExtra("images", new ArrayList(imageURIs));
+        intent.putExtra("captureNanos", captureNanos);
         parent.startActivity(intent);
         return intent;
     }
@@ -2,9 +2,17 @@ package com.example.laptop.phototimer.util;
 
 import android.app.Activity;
 import android.hardware.Camera;
+import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 public class ARManager implements SurfaceHolder.Callback {
 
 	Activity activity;
@@ -12,14 +20,36 @@ public class ARManager implements SurfaceHolder.Callback {
 	Camera.PreviewCallback previewCallback;
 	Runnable cameraOpenedCallback;
 	Runnable cameraStartedCallback;
+	Runnable firstPreviewFrameCallback;
 	boolean cameraInitialized = false;
 
 	Camera camera;
+	CameraParametersCache cameraParameters;
 	boolean cameraViewReady = false;
     int cameraId = 0;
 
 	int preferredPreviewWidth = 0, preferredPreviewHeight = 0;
 	int numPreviewCallbackBuffers = 0;
+	PreviewSizeStrategy previewSizeStrategy;
+
+	// Camera.open runs here. The thread has no Looper, so camera callbacks still arrive on the main thread.
+	ExecutorService cameraOpenExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "CameraOpen");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	Future<Camera> pendingOpen;
+	CameraStartupMetrics startupMetrics = new CameraStartupMetrics();
+
+	static final int SWITCH_LATENCY_WINDOW = 16;
+	CameraConfigCache configCache = new CameraConfigCache();
+	boolean cameraInfoPrewarmed = false;
+	boolean lastStartUsedCachedConfig = false;
+	long switchRequestedNanos = 0;
+	long lastSwitchLatencyNanos = -1;
+	FrameTimeStats switchLatencyStats = new FrameTimeStats(SWITCH_LATENCY_WINDOW);
 
 	public ARManager(Activity _activity, SurfaceView _cameraView, Camera.PreviewCallback _previewCallback) {
 		this.activity = _activity;
@@ -43,6 +73,12 @@ public class ARManager implements SurfaceHolder.Callback {
 		this.preferredPreviewHeight = height;
 	}
 
+	/** Sets how the preview size is chosen; if not set, the size nearest the preferred size is used. */
+	public void setPreviewSizeStrategy(PreviewSizeStrategy strategy) {
+		this.previewSizeStrategy = strategy;
+		configCache.clear();
+	}
+
 	public void setNumberOfPreviewCallbackBuffers(int n) {
 		this.numPreviewCallbackBuffers = n;
 	}
@@ -55,34 +91,157 @@ public class ARManager implements SurfaceHolder.Callback {
 		cameraStartedCallback = callback;
 	}
 
+	/** Sets a callback to run on the main thread when the first preview frame arrives after each start. */
+	public void setFirstPreviewFrameCallback(Runnable callback) {
+		firstPreviewFrameCallback = callback;
+	}
+
+	public CameraStartupMetrics getStartupMetrics() {
+		return startupMetrics;
+	}
+
+	/**
+	 * Starts opening the current camera on a background thread, so that it overlaps with layout and
+	 * surface creation. startCamera picks up the result once the surface is ready.
+	 */
+	public void openCameraInBackground() {
+		if (camera!=null || pendingOpen!=null) return;
+		startupMetrics.reset();
+		startupMetrics.mark(CameraStartupMetrics.Stage.OPEN_REQUESTED);
+		final int openCameraId = this.cameraId;
+		pendingOpen = cameraOpenExecutor.submit(new Callable<Camera>() {
+			public Camera call() {
+				Camera openedCamera = CameraUtils.openCamera(openCameraId);
+				startupMetrics.mark(CameraStartupMetrics.Stage.CAMERA_OPENED);
+				return openedCamera;
+			}
+		});
+		if (!cameraInfoPrewarmed) {
+			cameraInfoPrewarmed = true;
+			cameraOpenExecutor.execute(new Runnable() {
+				public void run() {
+					prewarmCameraInfo();
+				}
+			});
+		}
+	}
+
+	// looks up the orientation of every camera after the first open, so switching doesn't have to
+	void prewarmCameraInfo() {
+		int count = CameraUtils.numberOfCameras();
+		for(int id=0; id<count; id++) {
+			CameraConfigCache.Config config = configCache.configForCamera(id);
+			if (config.isRotated180()==null) {
+				config.setRotated180(CameraUtils.getCameraInfo(id).isRotated180Degrees());
+			}
+		}
+	}
+
+	Camera takeOpenedCamera() throws Exception {
+		openCameraInBackground();
+		try {
+			return pendingOpen.get();
+		}
+		finally {
+			pendingOpen = null;
+		}
+	}
+
+	void releasePendingOpen() {
+		final Future<Camera> openFuture = pendingOpen;
+		pendingOpen = null;
+		// runs after the open task on the same thread, so get() doesn't block
+		cameraOpenExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					openFuture.get().release();
+				}
+				catch(Exception ignored) {}
+			}
+		});
+	}
+
+	Camera.PreviewCallback firstFrameRecorder(final Camera.PreviewCallback delegate) {
+		return new Camera.PreviewCallback() {
+			boolean firstFrame = true;
+
+			public void onPreviewFrame(byte[] data, Camera frameCamera) {
+				if (firstFrame) {
+					firstFrame = false;
+					startupMetrics.mark(CameraStartupMetrics.Stage.FIRST_FRAME);
+					if (switchRequestedNanos > 0) {
+						lastSwitchLatencyNanos = System.nanoTime() - switchRequestedNanos;
+						switchLatencyStats.recordInterval(lastSwitchLatencyNanos);
+						switchRequestedNanos = 0;
+					}
+					if (firstPreviewFrameCallback!=null) firstPreviewFrameCallback.run();
+				}
+				if (delegate!=null) delegate.onPreviewFrame(data, frameCamera);
+			}
+		};
+	}
+
 	public boolean startCamera() {
 		if (camera==null) {
 			try {
-	            camera = CameraUtils.openCamera(cameraId);
+	            camera = takeOpenedCamera();
+	            // parameter changes from here to startPreview are batched into one setParameters call
+	            cameraParameters = new CameraParametersCache(camera);
+	            CameraConfigCache.Config config = configCache.configForCamera(cameraId);
+	            lastStartUsedCachedConfig = config.isComplete();
 	            if (!cameraInitialized && cameraOpenedCallback!=null) {
 	            	cameraOpenedCallback.run();
 	            }
 	            camera.setPreviewDisplay(cameraView.getHolder());
+	            Camera.Size previewSize;
 	            if (preferredPreviewWidth>0 && preferredPreviewHeight>0) {
-	            	CameraUtils.setNearestCameraPreviewSize(camera, preferredPreviewWidth, preferredPreviewHeight);
+	            	if (config.hasPreviewSizeFor(preferredPreviewWidth, preferredPreviewHeight)) {
+	            		cameraParameters.edit().setPreviewSize(config.getPreviewWidth(), config.getPreviewHeight());
+	            		previewSize = cameraParameters.get().getPreviewSize();
+	            	}
+	            	else {
+	            		lastStartUsedCachedConfig = false;
+	            		previewSize = (previewSizeStrategy!=null) ?
+	            				CameraUtils.setCameraPreviewSize(cameraParameters, previewSizeStrategy, preferredPreviewWidth, preferredPreviewHeight) :
+	            				CameraUtils.setNearestCameraPreviewSize(cameraParameters, preferredPreviewWidth, preferredPreviewHeight);
+	            		config.setPreviewSize(preferredPreviewWidth, preferredPreviewHeight, previewSize.width, previewSize.height);
+	            	}
+	            }
+	            else {
+	            	previewSize = cameraParameters.get().getPreviewSize();
+	            }
+	            if (previewCallback instanceof PipelinePreviewCallback) {
+	            	((PipelinePreviewCallback)previewCallback).setCamera(camera, previewSize.width, previewSize.height);
 	            }
 
 	            if (numPreviewCallbackBuffers > 0) {
-	            	CameraUtils.createPreviewCallbackBuffers(camera, this.numPreviewCallbackBuffers);
-	            	CameraUtils.setPreviewCallbackWithBuffer(camera, this.previewCallback);
+	            	CameraUtils.createPreviewCallbackBuffers(camera, previewSize, this.numPreviewCallbackBuffers);
+	            	CameraUtils.setPreviewCallbackWithBuffer(camera, firstFrameRecorder(this.previewCallback));
+	            }
+	            else if (this.previewCallback!=null) {
+		            camera.setPreviewCallback(firstFrameRecorder(this.previewCallback));
 	            }
 	            else {
-		            camera.setPreviewCallback(this.previewCallback);
+	            	camera.setOneShotPreviewCallback(firstFrameRecorder(null));
 	            }
 
-	            if (CameraUtils.getCameraInfo(this.cameraId).isRotated180Degrees()) {
+	            if (config.isRotated180()==null) {
+	            	config.setRotated180(CameraUtils.getCameraInfo(this.cameraId).isRotated180Degrees());
+	            }
+	            if (config.isRotated180()) {
 	               camera.setDisplayOrientation(180);
-	               Camera.Parameters params = camera.getParameters();
-	               params.setRotation(180);
-	               camera.setParameters(params);
+	               cameraParameters.edit().setRotation(180);
+	            }
+
+	            // the preview size has to be applied for the callback buffers to match it
+	            List<String> rejectedParameters = cameraParameters.commitEach();
+	            if (!rejectedParameters.isEmpty()) {
+	            	Log.w("CamTimer", "Camera rejected parameters " + rejectedParameters);
 	            }
+	            startupMetrics.mark(CameraStartupMetrics.Stage.CONFIGURED);
 
 	            camera.startPreview();
+	            startupMetrics.mark(CameraStartupMetrics.Stage.PREVIEW_STARTED);
 	            if (!cameraInitialized && cameraStartedCallback!=null) {
 	            	cameraStartedCallback.run();
 	            }
@@ -90,6 +249,7 @@ public class ARManager implements SurfaceHolder.Callback {
 			}
 			catch(Exception ex) {
 				camera = null;
+				cameraParameters = null;
 			}
 		}
 		return (camera!=null);
@@ -103,20 +263,28 @@ public class ARManager implements SurfaceHolder.Callback {
 	}
 
 	public void stopCamera() {
+		if (pendingOpen!=null) {
+			releasePendingOpen();
+		}
 		if (camera!=null) {
+			if (previewCallback instanceof PipelinePreviewCallback) {
+				((PipelinePreviewCallback)previewCallback).clearCamera();
+			}
 			camera.setPreviewCallback(null);
 			camera.stopPreview();
 	    	camera.release();
 	    	camera = null;
+	    	cameraParameters = null;
 		}
 	}
 
     public void switchToCamera(int _cameraId) {
-    	if (camera!=null) {
-    		stopCamera();
-    	}
+    	switchRequestedNanos = System.nanoTime();
+    	// also releases a background open of the previous camera that hasn't been picked up yet
+    	stopCamera();
     	this.cameraId = _cameraId;
     	this.cameraInitialized = false;
+    	openCameraInBackground();
     	startCameraIfVisible();
     }
 
@@ -126,6 +294,7 @@ public class ARManager implements SurfaceHolder.Callback {
 
 	@Override
 	public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+		startupMetrics.mark(CameraStartupMetrics.Stage.SURFACE_READY);
 		this.cameraViewReady = true;
 		startCameraIfVisible();
 	}
@@ -144,8 +313,60 @@ public class ARManager implements SurfaceHolder.Callback {
 	public Camera getCamera() {
 		return camera;
 	}
+	/** Parameter snapshot for the open camera; changes made outside startCamera must be committed. */
+	public CameraParametersCache getCameraParameters() {
+		return cameraParameters;
+	}
 	public int getCameraId() {
 		return cameraId;
 	}
 
+	/**
+	 * Sets the largest supported picture size on the open camera, using the size cached for this
+	 * camera if there is one. Call from the camera opened callback so it's applied with the other settings.
+	 */
+	public Camera.Size setLargestPictureSize() {
+		CameraConfigCache.Config config = configCache.configForCamera(cameraId);
+		if (config.hasPictureSize()) {
+			cameraParameters.edit().setPictureSize(config.getPictureWidth(), config.getPictureHeight());
+			return cameraParameters.get().getPictureSize();
+		}
+		Camera.Size size = CameraUtils.setLargestCameraSize(cameraParameters);
+		if (size!=null) config.setPictureSize(size.width, size.height);
+		return size;
+	}
+
+	/** Flash modes supported by the open camera, cached per camera ID. */
+	public List<String> getSupportedFlashModes() {
+		CameraConfigCache.Config config = configCache.configForCamera(cameraId);
+		if (config.getFlashModes()==null) {
+			config.setFlashModes(CameraUtils.getFlashModes(cameraParameters.get()));
+		}
+		return config.getFlashModes();
+	}
+
+	public CameraConfigCache getConfigCache() {
+		return configCache;
+	}
+
+	/** True if the last start found a complete cached configuration for the camera and did no negotiation. */
+	public boolean lastStartUsedCachedConfig() {
+		return lastStartUsedCachedConfig;
+	}
+
+	// time from the last switchToCamera call to the new camera's first preview frame, or -1
+	public long getLastSwitchLatencyNanos() {
+		return lastSwitchLatencyNanos;
+	}
+
+	public FrameTimeStats getSwitchLatencyStats() {
+		return switchLatencyStats;
+	}
+
+	/** Stops the camera and the background open thread. The manager can't be used afterwards. */
+	public void shutdown() {
+		stopCamera();
+		cameraOpenExecutor.shutdown();
+	}
+
 }
@@ -1,7 +1,9 @@
 package com.example.laptop.phototimer.util;
 
+import java.io.BufferedInputStream;
 import java.io.FileNotFoundException;
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 
 import android.content.Context;
@@ -62,22 +64,80 @@ public class AndroidUtils {
     	scanSavedMediaFile(context, path, null);
     }
     
+	static int DECODE_BUFFER_SIZE = 16*1024;
+	static int BOUNDS_MARK_LIMIT = 1024*1024;
+
 	public static BitmapFactory.Options computeBitmapSizeFromURI(Context context, Uri imageURI) throws FileNotFoundException {
 		BitmapFactory.Options options = new BitmapFactory.Options();
 		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeStream(context.getContentResolver().openInputStream(imageURI), null, options);
+		InputStream input = context.getContentResolver().openInputStream(imageURI);
+		try {
+			BitmapFactory.decodeStream(input, null, options);
+		}
+		finally {
+			closeQuietly(input);
+		}
 		return options;
 	}
-	
-	public static Bitmap scaledBitmapFromURIWithMinimumSize(Context context, Uri imageURI, int width, int height) throws FileNotFoundException {
-		BitmapFactory.Options options = computeBitmapSizeFromURI(context, imageURI);
+
+	static void applyDecodePlan(BitmapFactory.Options options, int sourceWidth, int sourceHeight, int width, int height) {
 		options.inJustDecodeBounds = false;
-		
-		float wratio = 1.0f*options.outWidth / width;
-		float hratio = 1.0f*options.outHeight / height;		
-		options.inSampleSize = (int)Math.min(wratio, hratio);
-		
-		return BitmapFactory.decodeStream(context.getContentResolver().openInputStream(imageURI), null, options);		
+		options.inSampleSize = DecodePlanner.sampleSizeForMinimumSize(sourceWidth, sourceHeight, width, height);
+		boolean rgb565 = DecodePlanner.isThumbnailTarget(width, height);
+		options.inPreferredConfig = rgb565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+	}
+
+	/**
+	 * Decodes the image at the smallest power-of-two subsample that is at least width x height.
+	 * Bounds and pixels are read from one buffered stream, which is reopened only if it cannot be
+	 * reset.
+	 */
+	public static Bitmap scaledBitmapFromURIWithMinimumSize(Context context, Uri imageURI, int width, int height) throws FileNotFoundException {
+		InputStream input = new BufferedInputStream(context.getContentResolver().openInputStream(imageURI), DECODE_BUFFER_SIZE);
+		try {
+			input.mark(BOUNDS_MARK_LIMIT);
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeStream(input, null, options);
+			try {
+				input.reset();
+			}
+			catch(IOException ex) {
+				closeQuietly(input);
+				input = new BufferedInputStream(context.getContentResolver().openInputStream(imageURI), DECODE_BUFFER_SIZE);
+			}
+
+			applyDecodePlan(options, options.outWidth, options.outHeight, width, height);
+			return BitmapFactory.decodeStream(input, null, options);
+		}
+		finally {
+			closeQuietly(input);
+		}
+	}
+
+	/** Decodes JPEG data held in memory at the smallest power-of-two subsample that is at least width x height. */
+	public static Bitmap scaledBitmapFromJpegDataWithMinimumSize(byte[] data, int width, int height) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, 0, data.length, options);
+		if (options.outWidth<=0 || options.outHeight<=0) return null;
+		applyDecodePlan(options, options.outWidth, options.outHeight, width, height);
+		return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+	}
+
+	public static Bitmap scaledBitmapFromFileWithKnownSize(String path, int fileWidth, int fileHeight, int width, int height) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		applyDecodePlan(options, fileWidth, fileHeight, width, height);
+		return BitmapFactory.decodeFile(path, options);
+	}
+
+	static void closeQuietly(InputStream input) {
+		if (input!=null) {
+			try {
+				input.close();
+			}
+			catch(IOException ignored) {}
+		}
 	}
 	
 	public static void getScaledWidthAndHeightToMaximum(
@@ -108,28 +168,12 @@ public class AndroidUtils {
 	}
 
     public static boolean setSystemUiLowProfile(View view) {
-        return setSystemUiVisibility(view, "SYSTEM_UI_FLAG_LOW_PROFILE");
+        view.setSystemUiVisibility(View.SYSTEM_UI_FLAG_LOW_PROFILE);
+        return true;
     }
-    
-    static boolean setSystemUiVisibility(View view, String flagName) {
-        try {
-            Method setUiMethod = View.class.getMethod("setSystemUiVisibility", int.class);
-            Field flagField = View.class.getField(flagName);
-            setUiMethod.invoke(view, flagField.get(null));
-            return true;
-        }
-        catch(Exception ex) {
-            return false;
-        }
-    }
-    
+
+    // called by ScaledBitmapCache's sizeOf on every put and eviction, so no reflection here
     public static int getBitmapByteCount(Bitmap bitmap) {
-        try {
-            Method byteCountMethod = Bitmap.class.getMethod("getByteCount");
-            return (Integer)byteCountMethod.invoke(bitmap);
-        }
-        catch(Exception ex) {
-            return 4 * bitmap.getWidth() * bitmap.getHeight();
-        }
+        return bitmap.getByteCount();
     }
 }
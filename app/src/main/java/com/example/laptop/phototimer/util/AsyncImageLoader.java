@@ -7,36 +7,71 @@ import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.ImageView;
 
 public class AsyncImageLoader {
-    
-    static class BitmapWorkerTask extends AsyncTask<Uri, Void, Bitmap> {
-        WeakReference<ImageView> imageViewReference;
-        Uri data = null;
-        ScaledBitmapCache bitmapCache;
-        int width;
-        int height;
 
-        public BitmapWorkerTask(ImageView imageView, ScaledBitmapCache bitmapCache, int width, int height) {
-            imageViewReference = new WeakReference(imageView);
+    static int DEFAULT_DECODE_THREADS = 2;
+
+    static class ImageKey {
+        final ScaledBitmapCache bitmapCache;
+        final Uri uri;
+        final int width;
+        final int height;
+
+        ImageKey(ScaledBitmapCache bitmapCache, Uri uri, int width, int height) {
             this.bitmapCache = bitmapCache;
+            this.uri = uri;
             this.width = width;
             this.height = height;
         }
 
-        @Override protected Bitmap doInBackground(Uri...args) {
-            data = args[0];
-            return bitmapCache.getScaledBitmap(args[0], width, height);
+        @Override public boolean equals(Object obj) {
+            if (!(obj instanceof ImageKey)) return false;
+            ImageKey other = (ImageKey)obj;
+            return bitmapCache==other.bitmapCache && uri.equals(other.uri) && width==other.width && height==other.height;
+        }
+
+        @Override public int hashCode() {
+            return (uri.hashCode() * 31 + width) * 31 + height;
+        }
+    }
+
+    static DecodeScheduler.Decoder<ImageKey, Bitmap> SCALED_BITMAP_DECODER = new DecodeScheduler.Decoder<ImageKey, Bitmap>() {
+        public Bitmap decode(ImageKey key) {
+            return key.bitmapCache.getScaledBitmap(key.uri, key.width, key.height);
+        }
+    };
+
+    static class BitmapWorkerTask implements DecodeScheduler.Callback<Bitmap> {
+        WeakReference<ImageView> imageViewReference;
+        Uri data;
+        Handler handler;
+        DecodeScheduler<ImageKey, Bitmap>.Request request;
+
+        public BitmapWorkerTask(ImageView imageView, Uri data, Handler handler) {
+            imageViewReference = new WeakReference<ImageView>(imageView);
+            this.data = data;
+            this.handler = handler;
         }
 
-        @Override protected void onPostExecute(Bitmap bitmap) {
-            if (imageViewReference != null && bitmap != null) {
-                final ImageView imageView = imageViewReference.get();
-                if (imageView != null) {
-                    imageView.setImageBitmap(bitmap);
+        @Override public void decodeCompleted(final Bitmap bitmap) {
+            if (bitmap==null) return;
+            handler.post(new Runnable() {
+                public void run() {
+                    final ImageView imageView = imageViewReference.get();
+                    if (imageView != null && getBitmapWorkerTask(imageView)==BitmapWorkerTask.this) {
+                        imageView.setImageBitmap(bitmap);
+                    }
                 }
+            });
+        }
+
+        void cancel() {
+            if (request!=null) {
+                request.cancel();
             }
         }
         
@@ -57,7 +92,7 @@ public class AsyncImageLoader {
             if (bitmapWorkerTask != null) {
                 final Uri taskUri = bitmapWorkerTask.data;
                 if (!uri.equals(taskUri)) {
-                    bitmapWorkerTask.cancel(true);
+                    bitmapWorkerTask.cancel();
                 } 
                 else {
                     return false;
@@ -70,9 +105,9 @@ public class AsyncImageLoader {
     static class AsyncDrawable extends BitmapDrawable {
         private final WeakReference<BitmapWorkerTask> bitmapWorkerTaskReference;
 
-        public AsyncDrawable(Resources res, AsyncTask bitmapWorkerTask) {
+        public AsyncDrawable(Resources res, BitmapWorkerTask bitmapWorkerTask) {
             super(res, (Bitmap)null);
-            bitmapWorkerTaskReference = new WeakReference(bitmapWorkerTask);
+            bitmapWorkerTaskReference = new WeakReference<BitmapWorkerTask>(bitmapWorkerTask);
         }
 
         public BitmapWorkerTask getBitmapWorkerTask() {
@@ -80,20 +115,53 @@ public class AsyncImageLoader {
         }
     }
 
+    DecodeScheduler<ImageKey, Bitmap> decodeScheduler;
+    Handler handler = new Handler(Looper.getMainLooper());
+
+    public AsyncImageLoader(int decodeThreads) {
+        decodeScheduler = new DecodeScheduler<ImageKey, Bitmap>(SCALED_BITMAP_DECODER, decodeThreads);
+    }
+
+    public AsyncImageLoader() {
+        this(DEFAULT_DECODE_THREADS);
+    }
+
     public void loadImageIntoViewAsync(final ScaledBitmapCache bitmapCache, Uri imageUri, ImageView imageView,
             final int width, final int height, Resources resources) {
         Bitmap bitmap = bitmapCache.getInMemoryScaledBitmap(imageUri, width, height);
         if (bitmap!=null) {
+            BitmapWorkerTask.cancelPotentialWork(imageUri, imageView);
             imageView.setImageBitmap(bitmap);
             return;
         }
 
         if (BitmapWorkerTask.cancelPotentialWork(imageUri, imageView)) {
-            BitmapWorkerTask task = new BitmapWorkerTask(imageView, bitmapCache, width, height);
+            BitmapWorkerTask task = new BitmapWorkerTask(imageView, imageUri, handler);
             AsyncDrawable asyncDrawable = new AsyncDrawable(resources, task);
             imageView.setImageDrawable(asyncDrawable);
-            task.execute(imageUri);
+            task.request = decodeScheduler.submit(new ImageKey(bitmapCache, imageUri, width, height), task);
         }
     }
 
+    /**
+     * Decodes a bitmap of at least the given size through the cache and passes it, or null if it
+     * couldn't be decoded, to the callback on the main thread. The returned request can be cancelled.
+     */
+    public DecodeScheduler<?, Bitmap>.Request loadBitmapAsync(ScaledBitmapCache bitmapCache, Uri imageUri,
+            int width, int height, final DecodeScheduler.Callback<Bitmap> callback) {
+        return decodeScheduler.submit(new ImageKey(bitmapCache, imageUri, width, height), new DecodeScheduler.Callback<Bitmap>() {
+            public void decodeCompleted(final Bitmap bitmap) {
+                handler.post(new Runnable() {
+                    public void run() {
+                        callback.decodeCompleted(bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    public void shutdown() {
+        decodeScheduler.shutdown();
+    }
+
 }
@@ -0,0 +1,117 @@
+package com.example.laptop.phototimer.util;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plays short sound effects from raw resources through a SoundPool. The sounds are decoded once when
+ * the player is created, so playing one doesn't create a MediaPlayer or decode the file again.
+ * Records how long each play call takes and how long each sound took to load.
+ */
+public class AudioCuePlayer {
+
+	static final int MAX_STREAMS = 2;
+	static final int LATENCY_WINDOW = 32;
+
+	final SoundPool soundPool;
+	// resource ID -> SoundPool sound ID, and the reverse for load completion
+	final Map<Integer, Integer> soundIDs = new HashMap<Integer, Integer>();
+	final Map<Integer, Integer> resourcesBySoundID = new HashMap<Integer, Integer>();
+	final Map<Integer, Long> loadStartTimes = new HashMap<Integer, Long>();
+	final Map<Integer, Long> loadTimes = new HashMap<Integer, Long>();
+
+	final FrameTimeStats playLatencyStats = new FrameTimeStats(LATENCY_WINDOW);
+	int playsMissed = 0;
+
+	public AudioCuePlayer(Context context, int... resourceIDs) {
+		soundPool = createSoundPool();
+		soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+			public void onLoadComplete(SoundPool pool, int soundID, int status) {
+				soundLoaded(soundID, status);
+			}
+		});
+		for(int resourceID : resourceIDs) {
+			synchronized(this) {
+				int soundID = soundPool.load(context, resourceID, 1);
+				resourcesBySoundID.put(soundID, resourceID);
+				loadStartTimes.put(soundID, System.nanoTime());
+			}
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	static SoundPool createSoundPool() {
+		// media usage plays on STREAM_MUSIC like the older constructor, so the volume keys control it
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			AudioAttributes attributes = new AudioAttributes.Builder()
+					.setUsage(AudioAttributes.USAGE_MEDIA)
+					.setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+					.build();
+			return new SoundPool.Builder().setMaxStreams(MAX_STREAMS).setAudioAttributes(attributes).build();
+		}
+		return new SoundPool(MAX_STREAMS, AudioManager.STREAM_MUSIC, 0);
+	}
+
+	synchronized void soundLoaded(int soundID, int status) {
+		Integer resourceID = resourcesBySoundID.get(soundID);
+		if (resourceID==null || status!=0) return;
+		soundIDs.put(resourceID, soundID);
+		loadTimes.put(resourceID, System.nanoTime() - loadStartTimes.get(soundID));
+	}
+
+	public synchronized boolean isLoaded(int resourceID) {
+		return soundIDs.containsKey(resourceID);
+	}
+
+	/**
+	 * Plays the sound for the given resource. Returns false without playing if the sound hasn't
+	 * finished loading.
+	 */
+	public boolean play(int resourceID) {
+		Integer soundID;
+		synchronized(this) {
+			soundID = soundIDs.get(resourceID);
+			if (soundID==null) {
+				playsMissed++;
+				return false;
+			}
+		}
+		long start = System.nanoTime();
+		int streamID = soundPool.play(soundID, 1f, 1f, 1, 0, 1f);
+		long elapsed = System.nanoTime() - start;
+		synchronized(this) {
+			playLatencyStats.recordInterval(elapsed);
+		}
+		return streamID!=0;
+	}
+
+	// nanoseconds between requesting and finishing the load of a sound, or -1 if it hasn't loaded
+	public synchronized long loadTimeNanos(int resourceID) {
+		Long time = loadTimes.get(resourceID);
+		return (time!=null) ? time : -1;
+	}
+
+	public synchronized FrameTimeStats getPlayLatencyStats() {
+		return playLatencyStats;
+	}
+
+	public synchronized int getPlaysMissed() {
+		return playsMissed;
+	}
+
+	public synchronized String debugInfo() {
+		return String.format("%d sounds loaded, play call median %.2fms max %.2fms over %d plays, %d missed",
+				soundIDs.size(), playLatencyStats.medianNanos() / 1e6, playLatencyStats.percentileNanos(100) / 1e6,
+				playLatencyStats.getCount(), playsMissed);
+	}
+
+	public void release() {
+		soundPool.release();
+	}
+}
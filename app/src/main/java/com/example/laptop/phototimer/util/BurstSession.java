@@ -0,0 +1,112 @@
+package com.example.laptop.phototimer.util;
+
+/**
+ * Tracks the shots of one burst capture and their timing. For each shot it records when the
+ * capture was requested, when the shutter fired and when the JPEG arrived, giving per-shot
+ * shutter lag and the interval between consecutive shutters. Times are System.nanoTime values.
+ */
+public class BurstSession {
+
+	final int shotCount;
+	final boolean lockFocusAfterFirstShot;
+
+	final long[] requestTimes;
+	final long[] shutterTimes;
+	final long[] pictureTimes;
+	int shotsRequested = 0;
+	int shuttersFired = 0;
+	int picturesReceived = 0;
+
+	public BurstSession(int shotCount, boolean lockFocusAfterFirstShot) {
+		if (shotCount<1) {
+			throw new IllegalArgumentException("Burst must have at least one shot");
+		}
+		this.shotCount = shotCount;
+		this.lockFocusAfterFirstShot = lockFocusAfterFirstShot;
+		requestTimes = new long[shotCount];
+		shutterTimes = new long[shotCount];
+		pictureTimes = new long[shotCount];
+	}
+
+	public int getShotCount() {
+		return shotCount;
+	}
+
+	public boolean isMultiShot() {
+		return shotCount > 1;
+	}
+
+	public boolean locksFocusAfterFirstShot() {
+		return lockFocusAfterFirstShot;
+	}
+
+	public boolean hasMoreShots() {
+		return shotsRequested < shotCount;
+	}
+
+	public boolean isComplete() {
+		return picturesReceived >= shotCount;
+	}
+
+	// true if the next shot to be requested needs its own autofocus pass
+	public boolean shouldAutoFocusBeforeNextShot() {
+		return shotsRequested==0 || !lockFocusAfterFirstShot;
+	}
+
+	// 1-based number of the shot most recently requested
+	public int currentShotNumber() {
+		return shotsRequested;
+	}
+
+	public void shotRequested(long nanos) {
+		if (shotsRequested < shotCount) requestTimes[shotsRequested++] = nanos;
+	}
+
+	public void shutterFired(long nanos) {
+		if (shuttersFired < shotsRequested) shutterTimes[shuttersFired++] = nanos;
+	}
+
+	// returns the 1-based number of the shot whose picture arrived
+	public int pictureReceived(long nanos) {
+		if (picturesReceived < shotsRequested) {
+			// not every device calls the shutter callback
+			if (shuttersFired <= picturesReceived) {
+				shutterTimes[shuttersFired++] = nanos;
+			}
+			pictureTimes[picturesReceived++] = nanos;
+		}
+		return picturesReceived;
+	}
+
+	public long shutterTimeNanos(int shot) {
+		return (shot < shuttersFired) ? shutterTimes[shot] : -1;
+	}
+
+	public long shutterLagNanos(int shot) {
+		return (shot < shuttersFired) ? shutterTimes[shot] - requestTimes[shot] : -1;
+	}
+
+	public long captureLatencyNanos(int shot) {
+		return (shot < picturesReceived) ? pictureTimes[shot] - requestTimes[shot] : -1;
+	}
+
+	public long interShotIntervalNanos(int shot) {
+		return (shot > 0 && shot < shuttersFired) ? shutterTimes[shot] - shutterTimes[shot - 1] : -1;
+	}
+
+	public long totalDurationNanos() {
+		return (picturesReceived > 0) ? pictureTimes[picturesReceived - 1] - requestTimes[0] : -1;
+	}
+
+	public String summary() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("Burst of %d: total %.1fms", shotCount, totalDurationNanos() / 1e6));
+		for(int i=0; i<picturesReceived; i++) {
+			builder.append(String.format("; #%d lag %.1fms", i + 1, shutterLagNanos(i) / 1e6));
+			if (i > 0) {
+				builder.append(String.format(" interval %.1fms", interShotIntervalNanos(i) / 1e6));
+			}
+		}
+		return builder.toString();
+	}
+}
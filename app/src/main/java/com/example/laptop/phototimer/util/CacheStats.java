@@ -0,0 +1,57 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CacheStats {
+
+	final String name;
+	final AtomicLong hits = new AtomicLong();
+	final AtomicLong misses = new AtomicLong();
+	final AtomicLong evictions = new AtomicLong();
+
+	public CacheStats(String name) {
+		this.name = name;
+	}
+
+	public void recordHit() {
+		hits.incrementAndGet();
+	}
+
+	public void recordMiss() {
+		misses.incrementAndGet();
+	}
+
+	public void recordEviction() {
+		evictions.incrementAndGet();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public double hitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return (total>0) ? ((double)h) / total : 0;
+	}
+
+	public void reset() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d hits, %d misses, %d evictions (%.1f%% hit)",
+				name, getHits(), getMisses(), getEvictions(), 100*hitRatio());
+	}
+}
@@ -0,0 +1,106 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the configuration negotiated for each camera ID: the preview size chosen for a requested
+ * view size, the picture size, the supported flash modes and whether the image is rotated 180 degrees.
+ * Reopening a camera, for example when switching back to it, can then apply these values without
+ * parsing the supported size lists or querying camera info again. Values are filled in as they are
+ * negotiated.
+ */
+public class CameraConfigCache {
+
+	public static class Config {
+		public final int cameraId;
+
+		int requestedPreviewWidth, requestedPreviewHeight;
+		int previewWidth, previewHeight;
+		int pictureWidth, pictureHeight;
+		List<String> flashModes;
+		Boolean rotated180;
+
+		Config(int cameraId) {
+			this.cameraId = cameraId;
+		}
+
+		public synchronized boolean hasPreviewSizeFor(int requestedWidth, int requestedHeight) {
+			return previewWidth>0 && requestedPreviewWidth==requestedWidth && requestedPreviewHeight==requestedHeight;
+		}
+
+		public synchronized void setPreviewSize(int requestedWidth, int requestedHeight, int width, int height) {
+			requestedPreviewWidth = requestedWidth;
+			requestedPreviewHeight = requestedHeight;
+			previewWidth = width;
+			previewHeight = height;
+		}
+
+		public synchronized int getPreviewWidth() {
+			return previewWidth;
+		}
+
+		public synchronized int getPreviewHeight() {
+			return previewHeight;
+		}
+
+		public synchronized boolean hasPictureSize() {
+			return pictureWidth>0;
+		}
+
+		public synchronized void setPictureSize(int width, int height) {
+			pictureWidth = width;
+			pictureHeight = height;
+		}
+
+		public synchronized int getPictureWidth() {
+			return pictureWidth;
+		}
+
+		public synchronized int getPictureHeight() {
+			return pictureHeight;
+		}
+
+		// null if not known yet
+		public synchronized List<String> getFlashModes() {
+			return flashModes;
+		}
+
+		public synchronized void setFlashModes(List<String> modes) {
+			flashModes = modes;
+		}
+
+		// null if not known yet
+		public synchronized Boolean isRotated180() {
+			return rotated180;
+		}
+
+		public synchronized void setRotated180(boolean value) {
+			rotated180 = value;
+		}
+
+		public synchronized boolean isComplete() {
+			return previewWidth>0 && pictureWidth>0 && flashModes!=null && rotated180!=null;
+		}
+	}
+
+	final Map<Integer, Config> configs = new HashMap<Integer, Config>();
+
+	public synchronized Config configForCamera(int cameraId) {
+		Config config = configs.get(cameraId);
+		if (config==null) {
+			config = new Config(cameraId);
+			configs.put(cameraId, config);
+		}
+		return config;
+	}
+
+	public synchronized boolean hasConfig(int cameraId) {
+		return configs.containsKey(cameraId);
+	}
+
+	public synchronized void clear() {
+		configs.clear();
+	}
+}
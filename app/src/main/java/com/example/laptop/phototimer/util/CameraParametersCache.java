@@ -0,0 +1,154 @@
+package com.example.laptop.phototimer.util;
+
+import android.hardware.Camera;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds one Camera.Parameters snapshot for an open camera. Camera.getParameters and setParameters
+ * each flatten the full parameter string through the camera service, so the snapshot is read once,
+ * changes are made to it via edit(), and commit() writes them all with a single setParameters.
+ * Counts the reads and writes that reach the camera. If the camera rejects a batch, the changed
+ * parameters can be retried one at a time with commitEach().
+ */
+public class CameraParametersCache {
+
+	final Camera camera;
+	Camera.Parameters params;
+	// flattened parameters as last read from or written to the camera
+	String committedState;
+	boolean dirty = false;
+	int parameterReads = 0;
+	int parameterWrites = 0;
+
+	public CameraParametersCache(Camera camera) {
+		this.camera = camera;
+	}
+
+	public Camera getCamera() {
+		return camera;
+	}
+
+	/** Returns the snapshot, reading it from the camera if needed. Callers should not modify it. */
+	public Camera.Parameters get() {
+		if (params==null) {
+			params = camera.getParameters();
+			committedState = params.flatten();
+			parameterReads++;
+		}
+		return params;
+	}
+
+	/** Returns the snapshot for modification; the changes are applied by the next commit(). */
+	public Camera.Parameters edit() {
+		Camera.Parameters p = get();
+		dirty = true;
+		return p;
+	}
+
+	public boolean hasPendingChanges() {
+		return dirty;
+	}
+
+	/**
+	 * Writes pending changes to the camera. Returns false if the camera rejected them, in which
+	 * case the snapshot is discarded so the next get() sees the camera's actual state.
+	 */
+	public boolean commit() {
+		if (!dirty) return true;
+		dirty = false;
+		parameterWrites++;
+		try {
+			camera.setParameters(params);
+			committedState = params.flatten();
+			return true;
+		}
+		catch(RuntimeException ex) {
+			params = null;
+			return false;
+		}
+	}
+
+	/**
+	 * Writes pending changes like commit(). If the camera rejects the batch, applies each changed
+	 * parameter on its own, so one unsupported value doesn't discard the others. Returns the keys
+	 * of the parameters the camera rejected; empty if everything was applied.
+	 */
+	public List<String> commitEach() {
+		List<String> rejected = new ArrayList<String>();
+		if (!dirty) return rejected;
+		String previousState = committedState;
+		Map<String, String> changes = changedParameters(previousState, params.flatten());
+		if (commit()) return rejected;
+
+		Camera.Parameters p = camera.getParameters();
+		parameterReads++;
+		for(Map.Entry<String, String> change : changes.entrySet()) {
+			String key = change.getKey();
+			String oldValue = p.get(key);
+			p.set(key, change.getValue());
+			parameterWrites++;
+			try {
+				camera.setParameters(p);
+			}
+			catch(RuntimeException ex) {
+				rejected.add(key);
+				if (oldValue!=null) p.set(key, oldValue);
+				else p.remove(key);
+			}
+		}
+		params = null;
+		return rejected;
+	}
+
+	/** Parameters whose values in the flattened after string are new or differ from before. */
+	static Map<String, String> changedParameters(String before, String after) {
+		Map<String, String> previous = parseFlattened(before);
+		Map<String, String> changed = parseFlattened(after);
+		for(Map.Entry<String, String> entry : previous.entrySet()) {
+			if (entry.getValue().equals(changed.get(entry.getKey()))) {
+				changed.remove(entry.getKey());
+			}
+		}
+		return changed;
+	}
+
+	static Map<String, String> parseFlattened(String flattened) {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		if (flattened==null) return values;
+		for(String pair : flattened.split(";")) {
+			int separator = pair.indexOf('=');
+			if (separator>0) {
+				values.put(pair.substring(0, separator), pair.substring(separator + 1));
+			}
+		}
+		return values;
+	}
+
+	/** Discards the snapshot and any uncommitted changes. */
+	public void invalidate() {
+		params = null;
+		committedState = null;
+		dirty = false;
+	}
+
+	public int getParameterReads() {
+		return parameterReads;
+	}
+
+	public int getParameterWrites() {
+		return parameterWrites;
+	}
+
+	public int getRoundTrips() {
+		return parameterReads + parameterWrites;
+	}
+
+	@Override
+	public String toString() {
+		return "CameraParametersCache: " + parameterReads + " reads, " + parameterWrites + " writes";
+	}
+}
@@ -0,0 +1,67 @@
+package com.example.laptop.phototimer.util;
+
+/**
+ * Timestamps of the stages between requesting a camera and receiving its first preview frame.
+ * Times are System.nanoTime values; elapsed times are measured from the OPEN_REQUESTED stage.
+ * Stages may be marked from different threads.
+ */
+public class CameraStartupMetrics {
+
+	public static enum Stage {
+		OPEN_REQUESTED,
+		CAMERA_OPENED,
+		SURFACE_READY,
+		CONFIGURED,
+		PREVIEW_STARTED,
+		FIRST_FRAME,
+	}
+
+	static final Stage[] STAGES = Stage.values();
+
+	final long[] times = new long[STAGES.length];
+	final boolean[] marked = new boolean[STAGES.length];
+
+	public synchronized void reset() {
+		for(int i=0; i<STAGES.length; i++) {
+			marked[i] = false;
+		}
+	}
+
+	/** Records the time of a stage. Only the first mark of each stage after reset() counts. */
+	public synchronized void mark(Stage stage, long nanos) {
+		int index = stage.ordinal();
+		if (!marked[index]) {
+			times[index] = nanos;
+			marked[index] = true;
+		}
+	}
+
+	public void mark(Stage stage) {
+		mark(stage, System.nanoTime());
+	}
+
+	public synchronized boolean isMarked(Stage stage) {
+		return marked[stage.ordinal()];
+	}
+
+	// time from the open request to the given stage, or -1 if either hasn't been marked
+	public synchronized long elapsedNanos(Stage stage) {
+		int start = Stage.OPEN_REQUESTED.ordinal();
+		int index = stage.ordinal();
+		return (marked[start] && marked[index]) ? times[index] - times[start] : -1;
+	}
+
+	public long timeToFirstFrameNanos() {
+		return elapsedNanos(Stage.FIRST_FRAME);
+	}
+
+	public synchronized String summary() {
+		StringBuilder builder = new StringBuilder("Camera startup:");
+		for(Stage stage : STAGES) {
+			if (stage!=Stage.OPEN_REQUESTED && marked[stage.ordinal()]) {
+				builder.append(String.format(" %s +%.1fms", stage.name().toLowerCase(), elapsedNanos(stage) / 1e6));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -1,6 +1,6 @@
 package com.example.laptop.phototimer.util;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -10,25 +10,15 @@ import android.hardware.Camera;
 
 public class CameraUtils {
 
+	// The APIs below used to be looked up by reflection for pre-2.3 devices. minSdkVersion is 19,
+	// so they are called directly.
+
 	public static int numberOfCameras() {
-		try {
-			Method m = Camera.class.getMethod("getNumberOfCameras");
-			return ((Number)m.invoke(null)).intValue();
-		}
-		catch(Exception ex) {
-			return 1;
-		}
+		return Camera.getNumberOfCameras();
 	}
 
-	@SuppressWarnings("unchecked")
-    public static List<Camera.Size> previewSizesForCameraParameters(Camera.Parameters params) {
-    	try {
-    		Method m = params.getClass().getMethod("getSupportedPreviewSizes");
-    		return (List<Camera.Size>)m.invoke(params);
-    	}
-    	catch(Exception ex) {
-    		return null;
-    	}
+	public static List<Camera.Size> previewSizesForCameraParameters(Camera.Parameters params) {
+		return params.getSupportedPreviewSizes();
 	}
 
 	public static Camera.Size bestCameraSizeForWidthAndHeight(Camera.Parameters params, int width, int height) {
@@ -47,30 +37,84 @@ public class CameraUtils {
 		return bestSize;
 	}
 
+	// the original selection: smallest sum of width and height differences from the view
+	public static final PreviewSizeStrategy NEAREST_PREVIEW_SIZE = new PreviewSizeStrategy() {
+		public int selectPreviewSize(List<int[]> candidates, int[] viewSize, int[] captureSize, List<int[]> fpsRanges) {
+			int bestIndex = -1;
+			int bestDiff = 0;
+			for(int i=0; i<candidates.size(); i++) {
+				int[] size = candidates.get(i);
+				int diff = Math.abs(size[0] - viewSize[0]) + Math.abs(size[1] - viewSize[1]);
+				if (bestIndex<0 || diff<bestDiff) {
+					bestIndex = i;
+					bestDiff = diff;
+				}
+			}
+			return bestIndex;
+		}
+	};
+
+	public static List<int[]> sizeArrays(List<Camera.Size> sizes) {
+		List<int[]> arrays = new ArrayList<int[]>();
+		if (sizes!=null) {
+			for(Camera.Size size : sizes) {
+				arrays.add(new int[] {size.width, size.height});
+			}
+		}
+		return arrays;
+	}
+
+	/**
+	 * Sets the preview size chosen by the strategy for a view of the given size, taking the picture size
+	 * and frame rates from the snapshot. Changes the snapshot only; the caller commits.
+	 */
+	public static Camera.Size setCameraPreviewSize(CameraParametersCache cache, PreviewSizeStrategy strategy, int width, int height) {
+		Camera.Parameters params = cache.get();
+		List<Camera.Size> previewSizes = previewSizesForCameraParameters(params);
+		if (previewSizes!=null && previewSizes.size()>0) {
+			Camera.Size pictureSize = params.getPictureSize();
+			int[] captureSize = (pictureSize!=null) ? new int[] {pictureSize.width, pictureSize.height} : null;
+			int index = strategy.selectPreviewSize(sizeArrays(previewSizes), new int[] {width, height},
+					captureSize, params.getSupportedPreviewFpsRange());
+			if (index>=0) {
+				Camera.Size size = previewSizes.get(index);
+				cache.edit().setPreviewSize(size.width, size.height);
+			}
+		}
+		return cache.get().getPreviewSize();
+	}
+
 	public static Camera.Size setNearestCameraPreviewSize(Camera camera, int width, int height) {
-		Camera.Parameters params = camera.getParameters();
-		Camera.Size size = bestCameraSizeForWidthAndHeight(params, width, height);
+		CameraParametersCache cache = new CameraParametersCache(camera);
+		Camera.Size size = setNearestCameraPreviewSize(cache, width, height);
+		cache.commit();
+		return size;
+	}
+
+	// changes the snapshot only; the caller commits
+	public static Camera.Size setNearestCameraPreviewSize(CameraParametersCache cache, int width, int height) {
+		Camera.Size size = bestCameraSizeForWidthAndHeight(cache.get(), width, height);
 		if (size!=null) {
-			params.setPreviewSize(size.width, size.height);
-			camera.setParameters(params);
+			cache.edit().setPreviewSize(size.width, size.height);
 		}
-		return params.getPreviewSize();
+		return cache.get().getPreviewSize();
 	}
 
 
-	@SuppressWarnings("unchecked")
-    public static List<Camera.Size> pictureSizesForCameraParameters(Camera.Parameters params) {
-    	try {
-    		Method m = params.getClass().getMethod("getSupportedPictureSizes");
-    		return (List<Camera.Size>)m.invoke(params);
-    	}
-    	catch(Exception ex) {
-    		return null;
-    	}
+	public static List<Camera.Size> pictureSizesForCameraParameters(Camera.Parameters params) {
+		return params.getSupportedPictureSizes();
 	}
 
 	public static Camera.Size setLargestCameraSize(Camera camera) {
-		Camera.Parameters params = camera.getParameters();
+		CameraParametersCache cache = new CameraParametersCache(camera);
+		Camera.Size size = setLargestCameraSize(cache);
+		cache.commit();
+		return size;
+	}
+
+	// changes the snapshot only; the caller commits
+	public static Camera.Size setLargestCameraSize(CameraParametersCache cache) {
+		Camera.Parameters params = cache.get();
 		List<Camera.Size> pictureSizes = pictureSizesForCameraParameters(params);
 		if (pictureSizes!=null && pictureSizes.size()>0) {
 			long bestPixels = -1;
@@ -83,127 +127,105 @@ public class CameraUtils {
 				}
 			}
 			if (bestSize!=null) {
-				params.setPictureSize(bestSize.width, bestSize.height);
-				camera.setParameters(params);
+				cache.edit().setPictureSize(bestSize.width, bestSize.height);
 			}
 		}
 
 		return params.getPictureSize();
 	}
 
+	static final GrayscaleConverter sharedGrayscaleConverter = new GrayscaleConverter();
+
+	/**
+	 * @deprecated Use a GrayscaleConverter owned by the thread processing the frames; this shares
+	 * one converter between all callers and serializes them.
+	 */
+	@Deprecated
 	public static Bitmap fillGrayscaleBitmapFromCameraData(Bitmap bitmap, byte[] cdata, int width, int height) {
-		int[] pixels = new int[cdata.length];
-		for(int i=0; i<cdata.length; i++) {
-			int g = 0xff & cdata[i];
-			pixels[i] = (255<<24) + (g<<16) + (g<<8) + g;
+		synchronized(sharedGrayscaleConverter) {
+			return sharedGrayscaleConverter.fillGrayscaleBitmap(bitmap, cdata, width, height);
 		}
-		bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
-		return bitmap;
 	}
 
 	public static Camera openCamera(int cameraId) {
 		if (cameraId>=0) {
-			Method openMethod = null;
 			try {
-				openMethod = Camera.class.getMethod("open", int.class);
-			}
-			catch(Exception ex) {
-				openMethod = null;
-			}
-			if (openMethod!=null) {
-				try {
-					return (Camera)openMethod.invoke(null, cameraId);
-				}
-				catch(Exception ignored) {}
+				return Camera.open(cameraId);
 			}
+			catch(RuntimeException ignored) {}
 		}
 		return Camera.open();
 	}
 
-	static Class<? extends byte[]> BYTE_ARRAY_CLASS = (new byte[0]).getClass();
-	static Method addPreviewBufferMethod;
-	static Method setPreviewCallbackWithBufferMethod;
-
-	static {
-		try {
-			addPreviewBufferMethod = Camera.class.getMethod("addCallbackBuffer", BYTE_ARRAY_CLASS);
-			setPreviewCallbackWithBufferMethod = Camera.class.getMethod("setPreviewCallbackWithBuffer", Camera.PreviewCallback.class);
-		}
-		catch(Exception notFound) {
-			addPreviewBufferMethod = setPreviewCallbackWithBufferMethod = null;
-		}
-	}
-
 	public static boolean previewBuffersSupported() {
-		return addPreviewBufferMethod!=null;
+		return true;
 	}
 
 	public static boolean createPreviewCallbackBuffers(Camera camera, int nbuffers) {
-		if (addPreviewBufferMethod==null) return false;
+		return createPreviewCallbackBuffers(camera, camera.getParameters().getPreviewSize(), nbuffers);
+	}
 
-		Camera.Size previewSize = camera.getParameters().getPreviewSize();
+	public static boolean createPreviewCallbackBuffers(Camera camera, Camera.Size previewSize, int nbuffers) {
 		int bufferSize = previewSize.width * previewSize.height * 3 / 2;
 		for(int i=0; i<nbuffers; i++) {
-			byte[] buffer = new byte[bufferSize];
-			try {
-				addPreviewBufferMethod.invoke(camera, buffer);
-			}
-			catch(Exception ignored) {
-				return false;
-			}
+			if (!addPreviewCallbackBuffer(camera, new byte[bufferSize])) return false;
 		}
 		return true;
 	}
 
 	public static boolean addPreviewCallbackBuffer(Camera camera, byte[] buffer) {
-		if (addPreviewBufferMethod==null) return false;
 		try {
-			addPreviewBufferMethod.invoke(camera, buffer);
+			camera.addCallbackBuffer(buffer);
 			return true;
 		}
-		catch(Exception ignored) {
+		catch(RuntimeException ignored) {
 			return false;
 		}
 	}
 
 	public static boolean setPreviewCallbackWithBuffer(Camera camera, Camera.PreviewCallback callback) {
-		if (setPreviewCallbackWithBufferMethod==null) {
-			camera.setPreviewCallback(callback);
-			return false;
-		}
-		try {
-			setPreviewCallbackWithBufferMethod.invoke(camera, callback);
-			return true;
-		}
-		catch(Exception ignored) {
-			camera.setPreviewCallback(callback);
-			return false;
-		}
+		camera.setPreviewCallbackWithBuffer(callback);
+		return true;
 	}
 
 	public static List<String> getFlashModes(Camera camera) {
-		Camera.Parameters params = camera.getParameters();
-		try {
-			Method flashModesMethod = params.getClass().getMethod("getSupportedFlashModes");
-			@SuppressWarnings("unchecked")
-            List<String> result = (List<String>)flashModesMethod.invoke(params);
-			if (result!=null) return result;
-		}
-		catch(Exception ignored) {}
-		return Collections.singletonList("off");
+		return getFlashModes(camera.getParameters());
+	}
+
+	public static List<String> getFlashModes(Camera.Parameters params) {
+		List<String> result = params.getSupportedFlashModes();
+		return (result!=null) ? result : Collections.singletonList("off");
 	}
 
 	public static boolean setFlashMode(Camera camera, String mode) {
-		Camera.Parameters params = camera.getParameters();
-		try {
-			Method flashModeMethod = params.getClass().getMethod("setFlashMode", String.class);
-			flashModeMethod.invoke(params, mode);
-			camera.setParameters(params);
-			return true;
+		CameraParametersCache cache = new CameraParametersCache(camera);
+		return setFlashMode(cache, mode) && cache.commit();
+	}
+
+	// changes the snapshot only; the caller commits
+	public static boolean setFlashMode(CameraParametersCache cache, String mode) {
+		cache.edit().setFlashMode(mode);
+		return true;
+	}
+
+	public static boolean setAutoExposureAndWhiteBalanceLock(Camera camera, boolean locked) {
+		CameraParametersCache cache = new CameraParametersCache(camera);
+		return setAutoExposureAndWhiteBalanceLock(cache, locked) && cache.commit();
+	}
+
+	// changes the snapshot only; the caller commits
+	public static boolean setAutoExposureAndWhiteBalanceLock(CameraParametersCache cache, boolean locked) {
+		Camera.Parameters params = cache.get();
+		boolean supported = false;
+		if (params.isAutoExposureLockSupported()) {
+			cache.edit().setAutoExposureLock(locked);
+			supported = true;
 		}
-		catch(Exception ignored) {
-			return false;
+		if (params.isAutoWhiteBalanceLockSupported()) {
+			cache.edit().setAutoWhiteBalanceLock(locked);
+			supported = true;
 		}
+		return supported;
 	}
 
 	public static boolean cameraSupportsFlash(Camera camera) {
@@ -214,6 +236,14 @@ public class CameraUtils {
 		return getFlashModes(camera).contains("auto");
 	}
 
+	public static boolean cameraSupportsFlash(CameraParametersCache cache) {
+		return getFlashModes(cache.get()).contains("on");
+	}
+
+	public static boolean cameraSupportsAutoFlash(CameraParametersCache cache) {
+		return getFlashModes(cache.get()).contains("auto");
+	}
+
     public static class CameraInfo {
         public static final int CAMERA_FACING_BACK = 0;
         public static final int CAMERA_FACING_FRONT = 1;
@@ -231,18 +261,14 @@ public class CameraUtils {
     }
 
     public static CameraInfo getCameraInfo(int cameraId) {
+        CameraInfo info = new CameraInfo();
         try {
-            Class<?> cameraInfoClass = Class.forName("android.hardware.Camera$CameraInfo");
-            Object cameraInfo = cameraInfoClass.newInstance();
-            Method getCameraId = Camera.class.getMethod("getCameraInfo", int.class, cameraInfoClass);
-            getCameraId.invoke(null, cameraId, cameraInfo);
-            CameraInfo info = new CameraInfo();
-            info.facing = cameraInfoClass.getField("facing").getInt(cameraInfo);
-            info.orientation = cameraInfoClass.getField("orientation").getInt(cameraInfo);
-            return info;
-        }
-        catch(Exception ex) {
-            return new CameraInfo();
+            Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
+            Camera.getCameraInfo(cameraId, cameraInfo);
+            info.facing = cameraInfo.facing;
+            info.orientation = cameraInfo.orientation;
         }
+        catch(RuntimeException ignored) {}
+        return info;
     }
 }
@@ -0,0 +1,135 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+/**
+ * Decodes captured pictures while their JPEG data is still in memory, on a pool with one thread per
+ * core, up to the number of pictures reviewed together. Review decodes go into the memory tier of
+ * ScaledBitmapCache under the Uri the picture is being saved to, so a review screen opened
+ * afterwards finds them already decoded. Thumbnails go into both tiers once the picture has been
+ * written, so the library never has to decode the saved file. Latencies are kept for diagnostics.
+ * Work queued before shutdown() still completes; work submitted after it is dropped.
+ */
+public class CaptureDecoder {
+
+	static final int TIMING_WINDOW = 32;
+
+	final ScaledBitmapCache bitmapCache;
+	final ExecutorService executor;
+	final FrameTimeStats decodeLatencies = new FrameTimeStats(TIMING_WINDOW);
+	final FrameTimeStats thumbnailTimes = new FrameTimeStats(TIMING_WINDOW);
+	int decodesFailed = 0;
+	int submissionsDropped = 0;
+	volatile boolean shutDown = false;
+
+	public CaptureDecoder(ScaledBitmapCache bitmapCache, int threadCount) {
+		this.bitmapCache = bitmapCache;
+		final AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "CaptureDecoder-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), threadFactory);
+	}
+
+	/**
+	 * Queues a decode of the JPEG data at a size of at least minWidth x minHeight. captureNanos is
+	 * when the picture was taken, and latency is measured from it. The data must not be modified
+	 * afterwards.
+	 */
+	public void decode(final byte[] jpeg, final Uri imageUri, final int minWidth, final int minHeight, final long captureNanos) {
+		submit(new Runnable() {
+			public void run() {
+				long startNanos = System.nanoTime();
+				Bitmap bitmap = null;
+				try {
+					bitmap = AndroidUtils.scaledBitmapFromJpegDataWithMinimumSize(jpeg, minWidth, minHeight);
+				}
+				catch(Exception ignored) {}
+				long endNanos = System.nanoTime();
+				synchronized(CaptureDecoder.this) {
+					if (bitmap==null) {
+						decodesFailed++;
+						return;
+					}
+					decodeLatencies.recordInterval(endNanos - captureNanos);
+				}
+				bitmapCache.putInMemory(imageUri, bitmap);
+				Log.i("CamTimer", String.format("Decoded %s for review: %.1fms after capture, %.1fms decoding",
+						imageUri.getLastPathSegment(), (endNanos - captureNanos) / 1e6, (endNanos - startNanos) / 1e6));
+			}
+		});
+	}
+
+	/**
+	 * Queues a thumbnail decode, at a size of at least width x height, of JPEG data that has been
+	 * written to the file behind imageUri, and stores the thumbnail in both tiers of the cache.
+	 */
+	public void createThumbnail(final byte[] jpeg, final Uri imageUri, final int width, final int height) {
+		submit(new Runnable() {
+			public void run() {
+				long startNanos = System.nanoTime();
+				Bitmap thumbnail = null;
+				try {
+					thumbnail = AndroidUtils.scaledBitmapFromJpegDataWithMinimumSize(jpeg, width, height);
+				}
+				catch(Exception ignored) {}
+				if (thumbnail==null) {
+					synchronized(CaptureDecoder.this) {
+						decodesFailed++;
+					}
+					return;
+				}
+				bitmapCache.putThumbnail(imageUri, thumbnail);
+				synchronized(CaptureDecoder.this) {
+					thumbnailTimes.recordInterval(System.nanoTime() - startNanos);
+				}
+			}
+		});
+	}
+
+	void submit(Runnable task) {
+		if (!shutDown) {
+			try {
+				executor.execute(task);
+				return;
+			}
+			catch(RejectedExecutionException ignored) {}
+		}
+		// a picture written after the activity was destroyed; the library decodes its thumbnail later
+		synchronized(this) {
+			submissionsDropped++;
+		}
+	}
+
+	public synchronized long latencyPercentileNanos(double percentile) {
+		return decodeLatencies.percentileNanos(percentile);
+	}
+
+	public synchronized String debugInfo() {
+		return String.format("%d captures decoded for review, latency median %.1fms p95 %.1fms; " +
+				"%d thumbnails created, median %.1fms; %d failed, %d dropped after shutdown",
+				decodeLatencies.getTotalIntervals(), decodeLatencies.medianNanos() / 1e6,
+				decodeLatencies.percentileNanos(95) / 1e6, thumbnailTimes.getTotalIntervals(),
+				thumbnailTimes.medianNanos() / 1e6, decodesFailed, submissionsDropped);
+	}
+
+	public void shutdown() {
+		shutDown = true;
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,45 @@
+package com.example.laptop.phototimer.util;
+
+/**
+ * Sizing math for subsampled image decodes. BitmapFactory only honors power-of-two sample sizes,
+ * so the planner picks the largest power of two that still leaves the decoded image at least as
+ * large as the requested minimum in both dimensions.
+ */
+public class DecodePlanner {
+
+	public static int THUMBNAIL_MAX_PIXELS = 320*240;
+
+	public static int sampleSizeForMinimumSize(int sourceWidth, int sourceHeight, int minWidth, int minHeight) {
+		if (sourceWidth<=0 || sourceHeight<=0) return 1;
+		minWidth = Math.max(minWidth, 1);
+		minHeight = Math.max(minHeight, 1);
+
+		int sampleSize = 1;
+		while ((long)minWidth*sampleSize*2 <= sourceWidth && (long)minHeight*sampleSize*2 <= sourceHeight) {
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+
+	// the JPEG decoder rounds subsampled dimensions up
+	public static int sampledDimension(int size, int sampleSize) {
+		return (size + sampleSize - 1) / sampleSize;
+	}
+
+	public static boolean isThumbnailTarget(int width, int height) {
+		return (long)width*height <= THUMBNAIL_MAX_PIXELS;
+	}
+
+	public static int bytesPerPixel(boolean rgb565) {
+		return rgb565 ? 2 : 4;
+	}
+
+	/** Number of decode threads for a device, one per core but no more than the images decoded together. */
+	public static int decodeThreadCount(int cores, int maxConcurrentImages) {
+		return Math.max(1, Math.min(cores, maxConcurrentImages));
+	}
+
+	public static int decodedByteCount(int sourceWidth, int sourceHeight, int sampleSize, boolean rgb565) {
+		return sampledDimension(sourceWidth, sampleSize) * sampledDimension(sourceHeight, sampleSize) * bytesPerPixel(rgb565);
+	}
+}
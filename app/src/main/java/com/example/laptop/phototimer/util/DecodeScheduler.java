@@ -0,0 +1,180 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs decodes on a fixed number of background threads. Queued work is taken newest first, so
+ * the most recently requested items (normally the ones on screen) are decoded before older ones.
+ * Requests for a key that is already queued or decoding share the same decode, and cancelling
+ * the last request for a key that has not started removes it from the queue. Callbacks run on
+ * the decode thread.
+ */
+public class DecodeScheduler<K, V> {
+
+	public static interface Decoder<K, V> {
+		V decode(K key) throws Exception;
+	}
+
+	public static interface Callback<V> {
+		void decodeCompleted(V value);
+	}
+
+	public class Request {
+		final DecodeTask task;
+		final Callback<V> callback;
+		boolean cancelled = false;
+
+		Request(DecodeTask task, Callback<V> callback) {
+			this.task = task;
+			this.callback = callback;
+		}
+
+		public boolean cancel() {
+			return cancelRequest(this);
+		}
+
+		public K getKey() {
+			return task.key;
+		}
+	}
+
+	class DecodeTask implements Runnable {
+		final K key;
+		final List<Request> requests = new ArrayList<Request>();
+		boolean started = false;
+
+		DecodeTask(K key) {
+			this.key = key;
+		}
+
+		public void run() {
+			synchronized(DecodeScheduler.this) {
+				if (requests.isEmpty()) {
+					removeInFlight(this);
+					return;
+				}
+				started = true;
+			}
+			V value = null;
+			try {
+				value = decoder.decode(key);
+			}
+			catch(Exception ignored) {}
+
+			List<Request> completed;
+			synchronized(DecodeScheduler.this) {
+				removeInFlight(this);
+				completed = new ArrayList<Request>(requests);
+				requests.clear();
+				++decodesCompleted;
+			}
+			for(Request request : completed) {
+				request.callback.decodeCompleted(value);
+			}
+		}
+	}
+
+	/** Work queue that hands out the most recently queued task first. */
+	static class LifoBlockingDeque<E> extends LinkedBlockingDeque<E> {
+		private static final long serialVersionUID = 1L;
+
+		@Override public boolean offer(E e) {
+			return super.offerFirst(e);
+		}
+
+		@Override public boolean add(E e) {
+			return offer(e);
+		}
+	}
+
+	Decoder<K, V> decoder;
+	ThreadPoolExecutor executor;
+	Map<K, DecodeTask> inFlight = new HashMap<K, DecodeTask>();
+
+	int decodesCompleted = 0;
+	int requestsCancelled = 0;
+	int requestsShared = 0;
+
+	public DecodeScheduler(Decoder<K, V> decoder, int threadCount) {
+		if (threadCount<1) {
+			throw new IllegalArgumentException("Must use at least one decode thread");
+		}
+		this.decoder = decoder;
+		final AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "DecodeScheduler-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		};
+		executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+				new LifoBlockingDeque<Runnable>(), threadFactory);
+	}
+
+	public synchronized Request submit(K key, Callback<V> callback) {
+		DecodeTask task = inFlight.get(key);
+		if (task==null) {
+			task = new DecodeTask(key);
+			inFlight.put(key, task);
+			executor.execute(task);
+		}
+		else {
+			++requestsShared;
+			if (!task.started && executor.getQueue().remove(task)) {
+				// requested again, so move it back to the front of the queue
+				executor.execute(task);
+			}
+		}
+		Request request = new Request(task, callback);
+		task.requests.add(request);
+		return request;
+	}
+
+	synchronized boolean cancelRequest(Request request) {
+		if (request.cancelled) return false;
+		DecodeTask task = request.task;
+		if (!task.requests.remove(request)) return false;
+		request.cancelled = true;
+		++requestsCancelled;
+		if (task.requests.isEmpty() && !task.started) {
+			executor.remove(task);
+			removeInFlight(task);
+		}
+		return true;
+	}
+
+	// a newer task may have replaced this one for the same key after it was cancelled
+	synchronized void removeInFlight(DecodeTask task) {
+		if (inFlight.get(task.key)==task) inFlight.remove(task.key);
+	}
+
+	public synchronized int queuedTaskCount() {
+		return executor.getQueue().size();
+	}
+
+	public synchronized int getDecodesCompleted() {
+		return decodesCompleted;
+	}
+
+	public synchronized int getRequestsCancelled() {
+		return requestsCancelled;
+	}
+
+	public synchronized int getRequestsShared() {
+		return requestsShared;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,91 @@
+package com.example.laptop.phototimer.util;
+
+/**
+ * Measures how much consecutive preview frames differ. Each frame's luma plane is decimated and
+ * compared with the previous decimated frame. The result is the fraction of pixels whose brightness
+ * changed by more than a threshold. With brightness compensation on, the change in average brightness
+ * is subtracted first, so auto-exposure adjustments aren't counted as change. The two decimated frames
+ * are kept in swapped, reused arrays. Instances are not thread safe.
+ */
+public class FrameDifferencer {
+
+	final LumaDecimator decimator;
+	int pixelThreshold;
+	boolean compensateBrightness = true;
+
+	byte[] previous, current;
+	int previousWidth, previousHeight;
+	boolean hasPrevious = false;
+	int buffersAllocated = 0;
+
+	public FrameDifferencer(int decimationFactor, int pixelThreshold) {
+		this.decimator = new LumaDecimator(decimationFactor);
+		this.pixelThreshold = pixelThreshold;
+	}
+
+	public void setPixelThreshold(int threshold) {
+		this.pixelThreshold = threshold;
+	}
+
+	public void setCompensateBrightness(boolean value) {
+		this.compensateBrightness = value;
+	}
+
+	/** Forgets the previous frame; the next frame becomes the new reference. */
+	public void reset() {
+		hasPrevious = false;
+	}
+
+	public int getBuffersAllocated() {
+		return buffersAllocated + decimator.getBuffersAllocated();
+	}
+
+	/**
+	 * Returns the fraction (0 to 1) of decimated pixels that changed by more than the pixel threshold
+	 * since the previous frame. Returns -1 if there is no previous frame of the same size, in which case
+	 * this frame becomes the reference.
+	 */
+	public float changedFraction(byte[] cdata, int width, int height) {
+		int outWidth = decimator.outputWidthForWidth(width);
+		int outHeight = decimator.outputHeightForHeight(height);
+		int npixels = outWidth * outHeight;
+		if (current==null || current.length<npixels) {
+			current = new byte[npixels];
+			previous = new byte[npixels];
+			hasPrevious = false;
+			buffersAllocated += 2;
+		}
+		decimator.decimate(cdata, width, height, current);
+
+		float fraction = -1;
+		if (hasPrevious && outWidth==previousWidth && outHeight==previousHeight && npixels>0) {
+			fraction = (float)countChangedPixels(npixels) / npixels;
+		}
+		byte[] swap = previous;
+		previous = current;
+		current = swap;
+		previousWidth = outWidth;
+		previousHeight = outHeight;
+		hasPrevious = true;
+		return fraction;
+	}
+
+	int countChangedPixels(int npixels) {
+		byte[] cur = current, prev = previous;
+		int offset = 0;
+		if (compensateBrightness) {
+			long difference = 0;
+			for(int i=0; i<npixels; i++) {
+				difference += (0xff & cur[i]) - (0xff & prev[i]);
+			}
+			offset = (int)(difference / npixels);
+		}
+		int threshold = pixelThreshold;
+		int changed = 0;
+		for(int i=0; i<npixels; i++) {
+			int diff = (0xff & cur[i]) - (0xff & prev[i]) - offset;
+			if (diff > threshold || diff < -threshold) changed++;
+		}
+		return changed;
+	}
+}
@@ -1,5 +1,5 @@
 package com.example.laptop.phototimer.util;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
 
 public class FrameRateManager {
 	
@@ -11,9 +11,16 @@ public class FrameRateManager {
 	double targetFrameRateFudgeFactor = 1.015;
 	double[] unfudgedTargetFrameRates;
 	
-	LinkedList<Long> previousFrameTimestamps = new LinkedList<Long>();
-	
 	int frameHistorySize = 10;
+	// ring buffer holding up to frameHistorySize+1 timestamps, oldest at timestampStart
+	long[] previousFrameTimestamps = new long[frameHistorySize + 1];
+	int timestampStart = 0;
+	int timestampCount = 0;
+
+	static int DEFAULT_STATS_WINDOW_SIZE = 120;
+	FrameTimeStats frameTimeStats = new FrameTimeStats(DEFAULT_STATS_WINDOW_SIZE);
+	double rateReductionPercentile = 0;
+	long jankThresholdNanos = 0;
 	boolean allowReducingFrameRate = true;
 	boolean allowLockingFrameRate = true;
 	
@@ -55,7 +62,9 @@ public class FrameRateManager {
 	
 
 	public void clearTimestamps() {
-		previousFrameTimestamps.clear();
+		timestampStart = 0;
+		timestampCount = 0;
+		frameTimeStats.clear();
 		goodFrames = 0;
 		slowFrames = 0;
 		currentFPS = -1;
@@ -80,16 +89,48 @@ public class FrameRateManager {
 	}
 	
 	
+	long timestampAt(int offset) {
+		return previousFrameTimestamps[(timestampStart + offset) % previousFrameTimestamps.length];
+	}
+
+	long newestTimestamp() {
+		if (timestampCount==0) throw new NoSuchElementException();
+		return timestampAt(timestampCount - 1);
+	}
+
+	void addTimestamp(long time) {
+		previousFrameTimestamps[(timestampStart + timestampCount) % previousFrameTimestamps.length] = time;
+		++timestampCount;
+	}
+
+	long removeOldestTimestamp() {
+		long oldest = previousFrameTimestamps[timestampStart];
+		timestampStart = (timestampStart + 1) % previousFrameTimestamps.length;
+		--timestampCount;
+		return oldest;
+	}
+
+	boolean isFrameRateTooSlow() {
+		if (rateReductionPercentile > 0) {
+			long interval = frameTimeStats.percentileNanos(rateReductionPercentile);
+			return interval > 0 && (BILLION / (double)interval) < minimumFrameRates[currentRateIndex];
+		}
+		return currentFPS < minimumFrameRates[currentRateIndex];
+	}
+	
 	public void frameStarted(long time) {
 		++totalFrames;
-		previousFrameTimestamps.add(time);
-		if (previousFrameTimestamps.size() > frameHistorySize) {
-			long firstTime = previousFrameTimestamps.removeFirst();
+		if (timestampCount > 0) {
+			frameTimeStats.recordInterval(time - newestTimestamp());
+		}
+		addTimestamp(time);
+		if (timestampCount > frameHistorySize) {
+			long firstTime = removeOldestTimestamp();
 			double seconds = (time - firstTime) / (double)BILLION;
 			currentFPS = frameHistorySize / seconds;
 			
 			if (!frameRateLocked && currentRateIndex < minimumFrameRates.length) {
-				if (currentFPS < minimumFrameRates[currentRateIndex]) {
+				if (isFrameRateTooSlow()) {
 					++slowFrames;
 					if (slowFrames >= maxSlowFrames) {
 						reduceFPS();
@@ -130,16 +171,16 @@ public class FrameRateManager {
 	}
 	
 	public long lastFrameStartTime() {
-		return previousFrameTimestamps.getLast();
+		return newestTimestamp();
 	}
 
 	public long nanosToWaitUntilNextFrame(long time) {
-		long lastStartTime = previousFrameTimestamps.getLast();
+		long lastStartTime = newestTimestamp();
 		long singleFrameGoalTime = lastStartTime + currentNanosPerFrame;
 		long waitTime = singleFrameGoalTime - time;
 
-		if (previousFrameTimestamps.size()==frameHistorySize) {
-			long multiFrameGoalTime = previousFrameTimestamps.getFirst() + frameHistorySize*currentNanosPerFrame;
+		if (timestampCount==frameHistorySize) {
+			long multiFrameGoalTime = timestampAt(0) + frameHistorySize*currentNanosPerFrame;
 			long behind = singleFrameGoalTime - multiFrameGoalTime;
 
 			if (behind > 0) waitTime -= behind;
@@ -181,4 +222,41 @@ public class FrameRateManager {
 		return totalFrames;
 	}
 
+	public FrameTimeStats getFrameTimeStats() {
+		return frameTimeStats;
+	}
+
+	public void setStatsWindowSize(int windowSize) {
+		frameTimeStats = new FrameTimeStats(windowSize);
+	}
+
+	/**
+	 * When set to a percentile such as 95, a frame counts as slow if the frame rate implied by
+	 * that percentile of recent intervals is below the minimum, instead of the 10-frame mean.
+	 * Zero restores the mean.
+	 */
+	public void setRateReductionPercentile(double percentile) {
+		rateReductionPercentile = percentile;
+	}
+
+	public double getRateReductionPercentile() {
+		return rateReductionPercentile;
+	}
+
+	public void setJankThresholdNanos(long nanos) {
+		jankThresholdNanos = nanos;
+	}
+
+	// frames in the stats window that took longer than the threshold, by default two target frames
+	public int jankCount() {
+		long threshold = (jankThresholdNanos > 0) ? jankThresholdNanos : 2*currentNanosPerFrame;
+		return frameTimeStats.jankCount(threshold);
+	}
+
+	public String frameTimeDebugInfo() {
+		return String.format("p50: %.1fms p95: %.1fms p99: %.1fms jank: %d",
+				frameTimeStats.percentileNanos(50) / (double)MILLION, frameTimeStats.percentileNanos(95) / (double)MILLION,
+				frameTimeStats.percentileNanos(99) / (double)MILLION, jankCount());
+	}
+
 }
@@ -0,0 +1,110 @@
+package com.example.laptop.phototimer.util;
+
+/**
+ * Rolling window of frame intervals with percentile and jank queries. Intervals are kept in a
+ * primitive ring buffer and percentiles are computed by sorting a preallocated scratch copy, so
+ * neither recording nor querying allocates.
+ */
+public class FrameTimeStats {
+
+	long[] intervals;
+	long[] sorted;
+	int count = 0;
+	int nextIndex = 0;
+	boolean sortedValid = false;
+	long totalIntervals = 0;
+
+	public FrameTimeStats(int windowSize) {
+		if (windowSize<1) {
+			throw new IllegalArgumentException("Window size must be at least 1");
+		}
+		intervals = new long[windowSize];
+		sorted = new long[windowSize];
+	}
+
+	public void recordInterval(long nanos) {
+		intervals[nextIndex] = nanos;
+		nextIndex = (nextIndex + 1) % intervals.length;
+		if (count < intervals.length) ++count;
+		++totalIntervals;
+		sortedValid = false;
+	}
+
+	public void clear() {
+		count = 0;
+		nextIndex = 0;
+		sortedValid = false;
+	}
+
+	public int getWindowSize() {
+		return intervals.length;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getTotalIntervals() {
+		return totalIntervals;
+	}
+
+	/** Returns the interval at the given percentile (0-100) using nearest rank, or -1 if empty. */
+	public long percentileNanos(double percentile) {
+		if (count==0) return -1;
+		if (!sortedValid) {
+			System.arraycopy(intervals, 0, sorted, 0, count);
+			heapSort(sorted, count);
+			sortedValid = true;
+		}
+		int rank = (int)Math.ceil(percentile / 100.0 * count);
+		int index = Math.min(count - 1, Math.max(0, rank - 1));
+		return sorted[index];
+	}
+
+	public long medianNanos() {
+		return percentileNanos(50);
+	}
+
+	public long meanNanos() {
+		if (count==0) return -1;
+		long total = 0;
+		for(int i=0; i<count; i++) {
+			total += intervals[i];
+		}
+		return total / count;
+	}
+
+	public int jankCount(long thresholdNanos) {
+		int janks = 0;
+		for(int i=0; i<count; i++) {
+			if (intervals[i] > thresholdNanos) ++janks;
+		}
+		return janks;
+	}
+
+	// in place and allocation free, unlike Arrays.sort on large arrays
+	static void heapSort(long[] values, int length) {
+		for(int i=length/2 - 1; i>=0; i--) {
+			siftDown(values, i, length);
+		}
+		for(int end=length - 1; end>0; end--) {
+			long tmp = values[0];
+			values[0] = values[end];
+			values[end] = tmp;
+			siftDown(values, 0, end);
+		}
+	}
+
+	static void siftDown(long[] values, int root, int length) {
+		while (true) {
+			int child = 2*root + 1;
+			if (child >= length) return;
+			if (child + 1 < length && values[child + 1] > values[child]) ++child;
+			if (values[root] >= values[child]) return;
+			long tmp = values[root];
+			values[root] = values[child];
+			values[child] = tmp;
+			root = child;
+		}
+	}
+}
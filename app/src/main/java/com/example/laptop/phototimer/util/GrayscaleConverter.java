@@ -0,0 +1,56 @@
+package com.example.laptop.phototimer.util;
+
+import android.graphics.Bitmap;
+
+/**
+ * Converts the luma plane of NV21 preview frames to ARGB grayscale pixels. The pixel array is
+ * allocated once per preview size and reused for every following frame, so steady-state
+ * conversion does not allocate. Instances are not thread safe; use one per consumer thread.
+ */
+public class GrayscaleConverter {
+
+	int[] pixels;
+	int pixelWidth, pixelHeight;
+	int buffersAllocated = 0;
+
+	int[] pixelBufferForSize(int width, int height) {
+		if (pixels==null || width!=pixelWidth || height!=pixelHeight) {
+			int npixels = width * height;
+			if (pixels==null || pixels.length<npixels) {
+				pixels = new int[npixels];
+				++buffersAllocated;
+			}
+			pixelWidth = width;
+			pixelHeight = height;
+		}
+		return pixels;
+	}
+
+	/**
+	 * Fills the pooled pixel buffer from the Y plane of the given frame and returns it. Only the
+	 * first width*height bytes of cdata are read; the chroma plane is ignored. The returned array
+	 * is owned by this converter and is overwritten by the next call.
+	 */
+	public int[] convertLuma(byte[] cdata, int width, int height) {
+		int npixels = width * height;
+		if (cdata.length < npixels) {
+			throw new IllegalArgumentException("Frame data too small for " + width + "x" + height);
+		}
+		int[] output = pixelBufferForSize(width, height);
+		for(int i=0; i<npixels; i++) {
+			int g = 0xff & cdata[i];
+			output[i] = 0xff000000 | (g<<16) | (g<<8) | g;
+		}
+		return output;
+	}
+
+	public Bitmap fillGrayscaleBitmap(Bitmap bitmap, byte[] cdata, int width, int height) {
+		int[] output = convertLuma(cdata, width, height);
+		bitmap.setPixels(output, 0, width, 0, 0, width, height);
+		return bitmap;
+	}
+
+	public int getBuffersAllocated() {
+		return buffersAllocated;
+	}
+}
@@ -0,0 +1,125 @@
+package com.example.laptop.phototimer.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes captured image data to disk on a single background thread, in the order it was
+ * queued. Completion callbacks are delivered through the executor given to the constructor,
+ * typically one that posts to the UI thread.
+ */
+public class ImageWriteQueue {
+
+	public static enum FsyncPolicy {
+		// leave flushing to the OS; fastest, but a crash can lose the last pictures
+		NONE,
+		// sync each file to storage before reporting it as written
+		EACH_FILE,
+	}
+
+	public static interface WriteCallback {
+		void writeCompleted(File file, long writeNanos);
+		void writeFailed(File file, Exception ex);
+	}
+
+	FsyncPolicy fsyncPolicy;
+	Executor callbackExecutor;
+	ExecutorService writeExecutor;
+	AtomicInteger pendingWrites = new AtomicInteger();
+
+	public ImageWriteQueue(FsyncPolicy fsyncPolicy, Executor callbackExecutor) {
+		this.fsyncPolicy = fsyncPolicy;
+		this.callbackExecutor = callbackExecutor;
+		this.writeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "ImageWriteQueue");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	public void setFsyncPolicy(FsyncPolicy policy) {
+		this.fsyncPolicy = policy;
+	}
+
+	public void enqueue(final byte[] data, final File file, final WriteCallback callback) {
+		pendingWrites.incrementAndGet();
+		writeExecutor.execute(new Runnable() {
+			public void run() {
+				long startTime = System.nanoTime();
+				Exception error = null;
+				try {
+					writeFile(data, file, fsyncPolicy);
+				}
+				catch(Exception ex) {
+					error = ex;
+				}
+				deliverResult(file, callback, error, System.nanoTime() - startTime);
+				pendingWrites.decrementAndGet();
+			}
+		});
+	}
+
+	void deliverResult(final File file, final WriteCallback callback, final Exception error, final long writeNanos) {
+		if (callback==null) return;
+		callbackExecutor.execute(new Runnable() {
+			public void run() {
+				if (error==null) {
+					callback.writeCompleted(file, writeNanos);
+				}
+				else {
+					callback.writeFailed(file, error);
+				}
+			}
+		});
+	}
+
+	static void writeFile(byte[] data, File file, FsyncPolicy fsyncPolicy) throws IOException {
+		File dir = file.getParentFile();
+		if (dir!=null && !dir.exists()) {
+			dir.mkdirs();
+		}
+		if (dir!=null && !dir.isDirectory()) {
+			throw new IOException("can't create directory " + dir.getPath());
+		}
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+			if (fsyncPolicy==FsyncPolicy.EACH_FILE) {
+				out.getFD().sync();
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	public int getPendingWriteCount() {
+		return pendingWrites.get();
+	}
+
+	/** Blocks until all queued writes have finished, or the timeout expires. Returns true if idle. */
+	public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (pendingWrites.get() > 0) {
+			if (System.currentTimeMillis() >= deadline) return false;
+			Thread.sleep(5);
+		}
+		return true;
+	}
+
+	// queued writes still complete; no new ones are accepted
+	public void shutdown() {
+		writeExecutor.shutdown();
+	}
+}
@@ -0,0 +1,193 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.Arrays;
+
+/**
+ * Schedules a fixed number of frames at a fixed interval against a monotonic clock. Frame i is
+ * planned at start + initialDelay + i*interval, so delays computed from the plan do not accumulate
+ * the latency of each callback the way chained postDelayed(interval) calls do. Records when each
+ * frame was started and captured so lateness against the plan can be measured over long runs.
+ */
+public class IntervalScheduler {
+
+	public static interface Clock {
+		long nanoTime();
+	}
+
+	public static final Clock SYSTEM_CLOCK = new Clock() {
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+
+	static final long NOT_RECORDED = -1;
+
+	final Clock clock;
+	final long initialDelayNanos;
+	final long intervalNanos;
+	final int frameCount;
+	boolean skipMissedFrames = false;
+
+	long startNanos;
+	boolean started = false;
+	int nextFrame = 0;
+	int framesSkipped = 0;
+	final long[] startedTimes;
+	final long[] capturedTimes;
+
+	public IntervalScheduler(Clock clock, long initialDelayNanos, long intervalNanos, int frameCount) {
+		if (intervalNanos<=0 || frameCount<1 || initialDelayNanos<0) {
+			throw new IllegalArgumentException("Invalid schedule: delay=" + initialDelayNanos +
+					" interval=" + intervalNanos + " frames=" + frameCount);
+		}
+		this.clock = clock;
+		this.initialDelayNanos = initialDelayNanos;
+		this.intervalNanos = intervalNanos;
+		this.frameCount = frameCount;
+		startedTimes = new long[frameCount];
+		capturedTimes = new long[frameCount];
+		Arrays.fill(startedTimes, NOT_RECORDED);
+		Arrays.fill(capturedTimes, NOT_RECORDED);
+	}
+
+	public IntervalScheduler(long initialDelayNanos, long intervalNanos, int frameCount) {
+		this(SYSTEM_CLOCK, initialDelayNanos, intervalNanos, frameCount);
+	}
+
+	/** If true, frames whose slot has fully passed are skipped instead of being taken late. */
+	public void setSkipMissedFrames(boolean value) {
+		skipMissedFrames = value;
+	}
+
+	public void start() {
+		startNanos = clock.nanoTime();
+		started = true;
+	}
+
+	public boolean isStarted() {
+		return started;
+	}
+
+	public boolean isFinished() {
+		return nextFrame >= frameCount;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	// index of the frame that will be returned by the next call to startFrame
+	public int getNextFrame() {
+		return nextFrame;
+	}
+
+	public int getFramesSkipped() {
+		return framesSkipped;
+	}
+
+	public long plannedTimeNanos(int frame) {
+		return startNanos + initialDelayNanos + frame * intervalNanos;
+	}
+
+	public long nanosUntilNextFrame() {
+		if (isFinished()) return -1;
+		return Math.max(0, plannedTimeNanos(nextFrame) - clock.nanoTime());
+	}
+
+	// rounded up, so a handler posted with this delay never runs before the frame is due
+	public long millisUntilNextFrame() {
+		long nanos = nanosUntilNextFrame();
+		return (nanos<=0) ? nanos : (nanos + 999999) / 1000000;
+	}
+
+	public boolean isFrameDue() {
+		return !isFinished() && clock.nanoTime() >= plannedTimeNanos(nextFrame);
+	}
+
+	/**
+	 * Marks the next frame as started and returns its index, or -1 if all frames are done. When
+	 * skipping missed frames, frames whose successor is already due are skipped first.
+	 */
+	public int startFrame() {
+		if (isFinished()) return -1;
+		long now = clock.nanoTime();
+		if (skipMissedFrames) {
+			while (nextFrame < frameCount-1 && now >= plannedTimeNanos(nextFrame+1)) {
+				++nextFrame;
+				++framesSkipped;
+			}
+		}
+		startedTimes[nextFrame] = now;
+		return nextFrame++;
+	}
+
+	/** Marks the next frame as skipped, for example because the previous capture is still running. */
+	public void skipFrame() {
+		if (isFinished()) return;
+		++nextFrame;
+		++framesSkipped;
+	}
+
+	public void frameCaptured(int frame, long nanos) {
+		if (frame>=0 && frame<frameCount) capturedTimes[frame] = nanos;
+	}
+
+	// time between the planned and actual start of a frame, or -1 if it was not started
+	public long startLatenessNanos(int frame) {
+		return (startedTimes[frame]==NOT_RECORDED) ? -1 : startedTimes[frame] - plannedTimeNanos(frame);
+	}
+
+	// time between the planned start and the capture of a frame, or -1 if it was not captured
+	public long captureLatenessNanos(int frame) {
+		return (capturedTimes[frame]==NOT_RECORDED) ? -1 : capturedTimes[frame] - plannedTimeNanos(frame);
+	}
+
+	public int getFramesCaptured() {
+		int count = 0;
+		for(int i=0; i<frameCount; i++) {
+			if (capturedTimes[i]!=NOT_RECORDED) count++;
+		}
+		return count;
+	}
+
+	public long meanCaptureLatenessNanos() {
+		long sum = 0;
+		int count = 0;
+		for(int i=0; i<frameCount; i++) {
+			if (capturedTimes[i]!=NOT_RECORDED) {
+				sum += captureLatenessNanos(i);
+				count++;
+			}
+		}
+		return (count>0) ? sum / count : 0;
+	}
+
+	public long maxCaptureLatenessNanos() {
+		long max = 0;
+		for(int i=0; i<frameCount; i++) {
+			if (capturedTimes[i]!=NOT_RECORDED) max = Math.max(max, captureLatenessNanos(i));
+		}
+		return max;
+	}
+
+	// standard deviation of capture lateness, i.e. how much the spacing between captures varies
+	public long captureJitterNanos() {
+		long mean = meanCaptureLatenessNanos();
+		double sumSquares = 0;
+		int count = 0;
+		for(int i=0; i<frameCount; i++) {
+			if (capturedTimes[i]!=NOT_RECORDED) {
+				double diff = captureLatenessNanos(i) - mean;
+				sumSquares += diff * diff;
+				count++;
+			}
+		}
+		return (count>0) ? (long)Math.sqrt(sumSquares / count) : 0;
+	}
+
+	public String summary() {
+		return String.format("%d/%d frames captured, %d skipped, lateness mean %.1fms max %.1fms jitter %.1fms",
+				getFramesCaptured(), frameCount, framesSkipped, meanCaptureLatenessNanos() / 1e6,
+				maxCaptureLatenessNanos() / 1e6, captureJitterNanos() / 1e6);
+	}
+}
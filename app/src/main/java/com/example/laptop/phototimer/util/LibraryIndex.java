@@ -0,0 +1,234 @@
+package com.example.laptop.phototimer.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persistent list of the pictures in the image directory, newest filename first. The directory
+ * is only listed again when its modification time differs from the one recorded at the last
+ * scan, and then only new files are examined. The entry list is never modified in place: each
+ * change publishes a new list, so a list returned by entries() can be read from any thread.
+ */
+public class LibraryIndex {
+
+	public static class Entry {
+		public final String filename;
+		public final long timestamp;
+		public final long size;
+		public volatile boolean thumbnailCached;
+
+		public Entry(String filename, long timestamp, long size, boolean thumbnailCached) {
+			this.filename = filename;
+			this.timestamp = timestamp;
+			this.size = size;
+			this.thumbnailCached = thumbnailCached;
+		}
+	}
+
+	static final String VERSION = "v1";
+	static final String SEPARATOR = "\t";
+	static final String IMAGE_EXTENSION = ".jpg";
+	static final String FILENAME_PREFIX = "IMG_";
+	static final String FILENAME_DATE_FORMAT = "yyyyMMdd_HHmmss";
+	// directory mtimes can have one or two seconds of resolution, so a scan that close to the
+	// last change is not trusted to have seen every file
+	static final long DIRECTORY_MTIME_SLACK_MILLIS = 2000;
+
+	static final Comparator<Entry> NEWEST_FIRST = new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			return e2.filename.compareTo(e1.filename);
+		}
+	};
+
+	File directory;
+	File indexFile;
+	File thumbnailDirectory;
+	SimpleDateFormat filenameDateFormat = new SimpleDateFormat(FILENAME_DATE_FORMAT);
+
+	volatile List<Entry> entries = Collections.emptyList();
+	long indexedDirectoryModified = 0;
+	boolean loaded = false;
+
+	public LibraryIndex(File directory, File indexFile, File thumbnailDirectory) {
+		this.directory = directory;
+		this.indexFile = indexFile;
+		this.thumbnailDirectory = thumbnailDirectory;
+	}
+
+	public List<Entry> entries() {
+		return entries;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public File fileForEntry(Entry entry) {
+		return new File(directory, entry.filename);
+	}
+
+	public synchronized void load() {
+		if (loaded) return;
+		loaded = true;
+		if (!indexFile.isFile()) return;
+
+		List<Entry> loadedEntries = new ArrayList<Entry>();
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(indexFile));
+			String[] header = String.valueOf(reader.readLine()).split(SEPARATOR);
+			if (header.length!=2 || !VERSION.equals(header[0])) return;
+			long directoryModified = Long.parseLong(header[1]);
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(SEPARATOR);
+				if (fields.length==4) {
+					loadedEntries.add(new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), "1".equals(fields[3])));
+				}
+			}
+			Collections.sort(loadedEntries, NEWEST_FIRST);
+			entries = Collections.unmodifiableList(loadedEntries);
+			indexedDirectoryModified = directoryModified;
+		}
+		catch(IOException ignored) {}
+		catch(NumberFormatException ignored) {}
+		finally {
+			if (reader!=null) {
+				try {
+					reader.close();
+				}
+				catch(IOException ignored) {}
+			}
+		}
+	}
+
+	/**
+	 * Brings the index up to date with the directory and saves it if anything changed. Returns
+	 * true if the entry list changed.
+	 */
+	public synchronized boolean refresh() {
+		load();
+		long directoryModified = directory.lastModified();
+		if (directoryModified!=0 && directoryModified==indexedDirectoryModified) {
+			return false;
+		}
+
+		String[] names = directory.list();
+		Set<String> filenames = new HashSet<String>();
+		if (names!=null) {
+			for(String name : names) {
+				if (name.endsWith(IMAGE_EXTENSION)) filenames.add(name);
+			}
+		}
+
+		boolean changed = false;
+		List<Entry> updated = new ArrayList<Entry>(filenames.size());
+		Set<String> indexed = new HashSet<String>();
+		for(Entry entry : entries) {
+			if (filenames.contains(entry.filename)) {
+				indexed.add(entry.filename);
+				updated.add(entry);
+			}
+			else {
+				changed = true;
+			}
+		}
+		for(String filename : filenames) {
+			if (!indexed.contains(filename)) {
+				updated.add(createEntry(filename));
+				changed = true;
+			}
+		}
+
+		if (changed) {
+			Collections.sort(updated, NEWEST_FIRST);
+			entries = Collections.unmodifiableList(updated);
+		}
+		boolean trustModified = (System.currentTimeMillis() - directoryModified) > DIRECTORY_MTIME_SLACK_MILLIS;
+		long recordedModified = trustModified ? directoryModified : 0;
+		if (changed || recordedModified!=indexedDirectoryModified) {
+			indexedDirectoryModified = recordedModified;
+			save();
+		}
+		return changed;
+	}
+
+	Entry createEntry(String filename) {
+		File file = new File(directory, filename);
+		boolean thumbnailCached = (thumbnailDirectory!=null) && (new File(thumbnailDirectory, filename)).isFile();
+		return new Entry(filename, timestampFromFilename(filename, file.lastModified()), file.length(), thumbnailCached);
+	}
+
+	long timestampFromFilename(String filename, long defaultValue) {
+		if (!filename.startsWith(FILENAME_PREFIX)) return defaultValue;
+		Date date = filenameDateFormat.parse(filename, new ParsePosition(FILENAME_PREFIX.length()));
+		return (date!=null) ? date.getTime() : defaultValue;
+	}
+
+	/** Removes the entry from memory; call save() afterwards, off the UI thread, to persist it. */
+	public synchronized void remove(String filename) {
+		List<Entry> updated = new ArrayList<Entry>(entries);
+		for(int i=0; i<updated.size(); i++) {
+			if (updated.get(i).filename.equals(filename)) {
+				updated.remove(i);
+				entries = Collections.unmodifiableList(updated);
+				// the directory changed too, so make the next refresh confirm it
+				indexedDirectoryModified = 0;
+				return;
+			}
+		}
+	}
+
+	/** Returns true if the entry was found and wasn't already marked, so the index needs saving. */
+	public synchronized boolean markThumbnailCached(String filename) {
+		for(Entry entry : entries) {
+			if (entry.filename.equals(filename)) {
+				if (entry.thumbnailCached) return false;
+				entry.thumbnailCached = true;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized void save() {
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+		Writer writer = null;
+		try {
+			indexFile.getParentFile().mkdirs();
+			writer = new FileWriter(tempFile);
+			writer.write(VERSION + SEPARATOR + indexedDirectoryModified + "\n");
+			for(Entry entry : entries) {
+				writer.write(entry.filename + SEPARATOR + entry.timestamp + SEPARATOR + entry.size +
+						SEPARATOR + (entry.thumbnailCached ? "1" : "0") + "\n");
+			}
+			writer.close();
+			writer = null;
+			tempFile.renameTo(indexFile);
+		}
+		catch(IOException ignored) {}
+		finally {
+			if (writer!=null) {
+				try {
+					writer.close();
+				}
+				catch(IOException ignored) {}
+			}
+			tempFile.delete();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.example.laptop.phototimer.util;
+
+/**
+ * Downscales the luma plane of NV21 preview frames by 2, 4 or 8 in each direction, averaging each
+ * factor x factor block of pixels. Analysis that works on the result touches 1/4, 1/16 or 1/64 of the
+ * full-resolution pixels. Edge pixels that don't fill a whole block are dropped. The output and
+ * working arrays are allocated once per frame size and reused, so steady-state decimation does not
+ * allocate. Instances are not thread safe; use one per consumer thread.
+ */
+public class LumaDecimator {
+
+	final int factor;
+	final int shift;
+
+	byte[] output;
+	int[] rowSums;
+	int outputWidth, outputHeight;
+	int buffersAllocated = 0;
+
+	public LumaDecimator(int factor) {
+		if (factor!=2 && factor!=4 && factor!=8) {
+			throw new IllegalArgumentException("Decimation factor must be 2, 4 or 8: " + factor);
+		}
+		this.factor = factor;
+		// dividing by factor*factor is a shift by 2*log2(factor)
+		this.shift = 2 * Integer.numberOfTrailingZeros(factor);
+	}
+
+	public int getFactor() {
+		return factor;
+	}
+
+	public int outputWidthForWidth(int width) {
+		return width / factor;
+	}
+
+	public int outputHeightForHeight(int height) {
+		return height / factor;
+	}
+
+	/** Width of the image produced by the last call to decimate. */
+	public int getOutputWidth() {
+		return outputWidth;
+	}
+
+	/** Height of the image produced by the last call to decimate. */
+	public int getOutputHeight() {
+		return outputHeight;
+	}
+
+	public int getBuffersAllocated() {
+		return buffersAllocated;
+	}
+
+	/**
+	 * Decimates the Y plane of the frame into the pooled output array and returns it. Values are
+	 * unsigned bytes, row-major with getOutputWidth() values per row. The returned array is owned by
+	 * this decimator and is overwritten by the next call.
+	 */
+	public byte[] decimate(byte[] cdata, int width, int height) {
+		int outWidth = outputWidthForWidth(width);
+		int outHeight = outputHeightForHeight(height);
+		int npixels = outWidth * outHeight;
+		if (output==null || output.length<npixels) {
+			output = new byte[npixels];
+			++buffersAllocated;
+		}
+		decimate(cdata, width, height, output);
+		return output;
+	}
+
+	/**
+	 * Decimates the Y plane of the frame into the given array, which must hold at least
+	 * (width/factor)*(height/factor) values.
+	 */
+	public void decimate(byte[] cdata, int width, int height, byte[] dest) {
+		if (cdata.length < width * height) {
+			throw new IllegalArgumentException("Frame data too small for " + width + "x" + height);
+		}
+		int outWidth = outputWidthForWidth(width);
+		int outHeight = outputHeightForHeight(height);
+		if (dest.length < outWidth * outHeight) {
+			throw new IllegalArgumentException("Output array too small for " + outWidth + "x" + outHeight);
+		}
+		if (rowSums==null || rowSums.length<outWidth) {
+			rowSums = new int[outWidth];
+			++buffersAllocated;
+		}
+		int[] sums = rowSums;
+		int round = 1 << (shift - 1);
+
+		for(int oy=0; oy<outHeight; oy++) {
+			int rowStart = oy * factor * width;
+			if (factor==2) {
+				// each output pixel reads two bytes from each of two rows; no row sums needed
+				int top = rowStart, bottom = rowStart + width;
+				int outIndex = oy * outWidth;
+				for(int ox=0; ox<outWidth; ox++) {
+					int sum = (0xff & cdata[top]) + (0xff & cdata[top+1]) + (0xff & cdata[bottom]) + (0xff & cdata[bottom+1]);
+					dest[outIndex + ox] = (byte)((sum + round) >> shift);
+					top += 2;
+					bottom += 2;
+				}
+				continue;
+			}
+			for(int ox=0; ox<outWidth; ox++) {
+				sums[ox] = 0;
+			}
+			// accumulate factor input rows, reading each row sequentially
+			for(int r=0; r<factor; r++) {
+				if (factor==4) {
+					addRowSums4(cdata, rowStart + r * width, sums, outWidth);
+				}
+				else {
+					addRowSums8(cdata, rowStart + r * width, sums, outWidth);
+				}
+			}
+			int outIndex = oy * outWidth;
+			for(int ox=0; ox<outWidth; ox++) {
+				dest[outIndex + ox] = (byte)((sums[ox] + round) >> shift);
+			}
+		}
+		outputWidth = outWidth;
+		outputHeight = outHeight;
+	}
+
+	static void addRowSums4(byte[] cdata, int index, int[] sums, int count) {
+		for(int ox=0; ox<count; ox++) {
+			sums[ox] += (0xff & cdata[index]) + (0xff & cdata[index+1]) + (0xff & cdata[index+2]) + (0xff & cdata[index+3]);
+			index += 4;
+		}
+	}
+
+	static void addRowSums8(byte[] cdata, int index, int[] sums, int count) {
+		for(int ox=0; ox<count; ox++) {
+			sums[ox] += (0xff & cdata[index]) + (0xff & cdata[index+1]) + (0xff & cdata[index+2]) + (0xff & cdata[index+3]) +
+					(0xff & cdata[index+4]) + (0xff & cdata[index+5]) + (0xff & cdata[index+6]) + (0xff & cdata[index+7]);
+			index += 8;
+		}
+	}
+}
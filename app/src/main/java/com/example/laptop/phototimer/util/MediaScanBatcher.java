@@ -0,0 +1,102 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Collects paths of newly saved media for a short window and scans them with one
+ * MediaScannerConnection, instead of connecting once per file. Per-path callbacks are delivered
+ * on the main thread. Call flush() from onPause so nothing waits on an activity that is leaving.
+ */
+public class MediaScanBatcher {
+
+	static long DEFAULT_BATCH_WINDOW_MILLIS = 500;
+
+	Context context;
+	Handler handler = new Handler(Looper.getMainLooper());
+	long batchWindowMillis;
+	Map<String, List<AndroidUtils.MediaScannerCallback>> pendingPaths = new LinkedHashMap<String, List<AndroidUtils.MediaScannerCallback>>();
+
+	int batchesScanned = 0;
+	int pathsScanned = 0;
+
+	Runnable flushRunnable = new Runnable() {
+		public void run() {
+			flush();
+		}
+	};
+
+	public MediaScanBatcher(Context context, long batchWindowMillis) {
+		this.context = context.getApplicationContext();
+		this.batchWindowMillis = batchWindowMillis;
+	}
+
+	public MediaScanBatcher(Context context) {
+		this(context, DEFAULT_BATCH_WINDOW_MILLIS);
+	}
+
+	public synchronized void scanFile(String path, AndroidUtils.MediaScannerCallback callback) {
+		boolean startWindow = pendingPaths.isEmpty();
+		List<AndroidUtils.MediaScannerCallback> callbacks = pendingPaths.get(path);
+		if (callbacks==null) {
+			callbacks = new ArrayList<AndroidUtils.MediaScannerCallback>();
+			pendingPaths.put(path, callbacks);
+		}
+		if (callback!=null) {
+			callbacks.add(callback);
+		}
+		if (startWindow) {
+			handler.postDelayed(flushRunnable, batchWindowMillis);
+		}
+	}
+
+	public void scanFile(String path) {
+		scanFile(path, null);
+	}
+
+	public void flush() {
+		final Map<String, List<AndroidUtils.MediaScannerCallback>> batch;
+		synchronized(this) {
+			handler.removeCallbacks(flushRunnable);
+			if (pendingPaths.isEmpty()) return;
+			batch = pendingPaths;
+			pendingPaths = new LinkedHashMap<String, List<AndroidUtils.MediaScannerCallback>>();
+			++batchesScanned;
+			pathsScanned += batch.size();
+		}
+
+		String[] paths = batch.keySet().toArray(new String[batch.size()]);
+		try {
+			MediaScannerConnection.scanFile(context, paths, null, new MediaScannerConnection.OnScanCompletedListener() {
+				public void onScanCompleted(final String path, final Uri uri) {
+					final List<AndroidUtils.MediaScannerCallback> callbacks = batch.get(path);
+					if (callbacks==null || callbacks.isEmpty()) return;
+					handler.post(new Runnable() {
+						public void run() {
+							for(AndroidUtils.MediaScannerCallback callback : callbacks) {
+								callback.mediaScannerCompleted(path, uri);
+							}
+						}
+					});
+				}
+			});
+		}
+		catch(Exception ignored) {}
+	}
+
+	public synchronized int getBatchesScanned() {
+		return batchesScanned;
+	}
+
+	public synchronized int getPathsScanned() {
+		return pathsScanned;
+	}
+}
@@ -0,0 +1,119 @@
+package com.example.laptop.phototimer.util;
+
+/**
+ * Preview frame processor that reports motion once it has been armed. The detector fires when the
+ * fraction of changed pixels between consecutive frames (see FrameDifferencer) reaches the area
+ * threshold for a number of consecutive frames. Frames right after arming are skipped while
+ * exposure settles. After firing, the detector disarms itself. The listener is called on the
+ * processing thread. Processing time of each analyzed frame is kept for diagnostics.
+ */
+public class MotionDetector implements PreviewFramePipeline.FrameProcessor {
+
+	public static interface Listener {
+		void motionDetected(float changedFraction);
+	}
+
+	public static final int DEFAULT_DECIMATION = 4;
+	public static final int DEFAULT_PIXEL_THRESHOLD = 24;
+	public static final float DEFAULT_AREA_THRESHOLD = 0.02f;
+	public static final int DEFAULT_CONSECUTIVE_FRAMES = 2;
+	public static final int DEFAULT_WARMUP_FRAMES = 8;
+	static final int TIMING_WINDOW = 64;
+
+	final Listener listener;
+	final FrameDifferencer differencer;
+	float areaThreshold = DEFAULT_AREA_THRESHOLD;
+	int consecutiveFrames = DEFAULT_CONSECUTIVE_FRAMES;
+	int warmupFrames = DEFAULT_WARMUP_FRAMES;
+
+	volatile boolean armed = false;
+	int framesSinceArmed = 0;
+	int motionFrames = 0;
+	float lastChangedFraction = -1;
+	long framesAnalyzed = 0;
+	final FrameTimeStats processingTimes = new FrameTimeStats(TIMING_WINDOW);
+
+	public MotionDetector(Listener listener) {
+		this(listener, DEFAULT_DECIMATION);
+	}
+
+	public MotionDetector(Listener listener, int decimationFactor) {
+		this.listener = listener;
+		this.differencer = new FrameDifferencer(decimationFactor, DEFAULT_PIXEL_THRESHOLD);
+	}
+
+	public synchronized void setAreaThreshold(float threshold) {
+		this.areaThreshold = threshold;
+	}
+
+	public synchronized void setPixelThreshold(int threshold) {
+		differencer.setPixelThreshold(threshold);
+	}
+
+	public synchronized void setConsecutiveFrames(int frames) {
+		this.consecutiveFrames = Math.max(1, frames);
+	}
+
+	public synchronized void setWarmupFrames(int frames) {
+		this.warmupFrames = Math.max(0, frames);
+	}
+
+	public synchronized void arm() {
+		differencer.reset();
+		framesSinceArmed = 0;
+		motionFrames = 0;
+		armed = true;
+	}
+
+	public synchronized void disarm() {
+		armed = false;
+	}
+
+	public boolean isArmed() {
+		return armed;
+	}
+
+	@Override
+	public void processFrame(byte[] frame, int width, int height) {
+		if (!armed) return;
+		boolean fire = false;
+		float fraction;
+		synchronized(this) {
+			if (!armed) return;
+			long startTime = System.nanoTime();
+			fraction = differencer.changedFraction(frame, width, height);
+			framesSinceArmed++;
+			if (fraction>=0 && framesSinceArmed>warmupFrames) {
+				motionFrames = (fraction>=areaThreshold) ? motionFrames+1 : 0;
+				if (motionFrames>=consecutiveFrames) {
+					armed = false;
+					fire = true;
+				}
+			}
+			lastChangedFraction = fraction;
+			framesAnalyzed++;
+			processingTimes.recordInterval(System.nanoTime() - startTime);
+		}
+		if (fire && listener!=null) {
+			listener.motionDetected(fraction);
+		}
+	}
+
+	public synchronized float getLastChangedFraction() {
+		return lastChangedFraction;
+	}
+
+	public synchronized long getFramesAnalyzed() {
+		return framesAnalyzed;
+	}
+
+	public synchronized long processingTimePercentileNanos(double percentile) {
+		return processingTimes.percentileNanos(percentile);
+	}
+
+	public synchronized String debugInfo() {
+		return String.format("%d frames analyzed, processing median %.2fms p95 %.2fms, last change %.3f",
+				framesAnalyzed, processingTimes.medianNanos() / 1e6, processingTimes.percentileNanos(95) / 1e6,
+				lastChangedFraction);
+	}
+}
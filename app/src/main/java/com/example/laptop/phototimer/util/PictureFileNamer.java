@@ -0,0 +1,46 @@
+package com.example.laptop.phototimer.util;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Names saved pictures IMG_yyyyMMdd_HHmmss[-shot].jpg. Names only go down to the second, so a name
+ * that already exists, or was handed out earlier in the same second and may still be queued for
+ * writing, gets a -2, -3... suffix instead of overwriting the earlier picture.
+ */
+public class PictureFileNamer {
+
+	static final String FILENAME_PREFIX = "IMG_";
+	static final String FILENAME_DATE_FORMAT = "yyyyMMdd_HHmmss";
+	static final String IMAGE_EXTENSION = ".jpg";
+
+	final File directory;
+	final SimpleDateFormat dateFormat = new SimpleDateFormat(FILENAME_DATE_FORMAT);
+	// names handed out during the current second
+	final Set<String> issuedNames = new HashSet<String>();
+	String issuedDate;
+
+	public PictureFileNamer(File directory) {
+		this.directory = directory;
+	}
+
+	/** Returns a file for a picture taken at the given time; shotNumber is 0 for a single picture. */
+	public synchronized File fileForPicture(Date date, int shotNumber) {
+		String dateString = dateFormat.format(date);
+		if (!dateString.equals(issuedDate)) {
+			issuedDate = dateString;
+			issuedNames.clear();
+		}
+		String base = FILENAME_PREFIX + dateString;
+		if (shotNumber > 0) base += ("-" + shotNumber);
+		String filename = base + IMAGE_EXTENSION;
+		for(int n=2; issuedNames.contains(filename) || new File(directory, filename).exists(); n++) {
+			filename = base + "-" + n + IMAGE_EXTENSION;
+		}
+		issuedNames.add(filename);
+		return new File(directory, filename);
+	}
+}
@@ -0,0 +1,46 @@
+package com.example.laptop.phototimer.util;
+
+import android.hardware.Camera;
+
+/**
+ * Camera preview callback that feeds frames into a PreviewFramePipeline and returns each buffer
+ * to the camera with addCallbackBuffer once the pipeline is done with it. Install it through
+ * ARManager with a nonzero number of preview callback buffers.
+ */
+public class PipelinePreviewCallback implements Camera.PreviewCallback, PreviewFramePipeline.BufferRecycler {
+
+	PreviewFramePipeline pipeline;
+	volatile Camera camera;
+
+	public PipelinePreviewCallback(PreviewFramePipeline pipeline) {
+		this.pipeline = pipeline;
+		pipeline.setBufferRecycler(this);
+	}
+
+	public void setCamera(Camera camera, int previewWidth, int previewHeight) {
+		this.camera = camera;
+		pipeline.setFrameSize(previewWidth, previewHeight);
+	}
+
+	public void clearCamera() {
+		this.camera = null;
+	}
+
+	@Override
+	public void onPreviewFrame(byte[] data, Camera camera) {
+		this.camera = camera;
+		pipeline.submitFrame(data);
+	}
+
+	@Override
+	public void recycleBuffer(byte[] buffer) {
+		Camera c = camera;
+		if (c!=null) {
+			CameraUtils.addPreviewCallbackBuffer(c, buffer);
+		}
+	}
+
+	public PreviewFramePipeline getPipeline() {
+		return pipeline;
+	}
+}
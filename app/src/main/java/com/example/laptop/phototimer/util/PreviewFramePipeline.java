@@ -0,0 +1,198 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands preview frame buffers from the camera callback thread to a single background consumer.
+ * The queue is bounded: when the consumer falls behind, new frames are dropped and their buffers
+ * returned immediately so the camera never runs out of callback buffers and the preview keeps
+ * running. Every buffer, processed or dropped, is given back through the BufferRecycler, except
+ * buffers sized for an earlier preview size, which are discarded. Exceptions thrown by the
+ * FrameProcessor are counted, and the first one is kept for diagnostics.
+ */
+public class PreviewFramePipeline {
+
+	public static interface FrameProcessor {
+		void processFrame(byte[] frame, int width, int height);
+	}
+
+	public static interface BufferRecycler {
+		void recycleBuffer(byte[] buffer);
+	}
+
+	static final long POLL_TIMEOUT_MILLIS = 250;
+
+	FrameProcessor frameProcessor;
+	BufferRecycler bufferRecycler;
+	BlockingQueue<byte[]> frameQueue;
+
+	volatile int frameWidth, frameHeight;
+	volatile boolean running = false;
+	// held while checking running and queueing, so no frame is queued after stop() has drained
+	final Object queueLock = new Object();
+	Thread workerThread;
+
+	AtomicLong framesProcessed = new AtomicLong();
+	AtomicLong framesDropped = new AtomicLong();
+	AtomicLong buffersDiscarded = new AtomicLong();
+	AtomicLong processingFailures = new AtomicLong();
+	volatile RuntimeException firstFailure;
+
+	public PreviewFramePipeline(FrameProcessor frameProcessor, int queueCapacity) {
+		if (queueCapacity<1) {
+			throw new IllegalArgumentException("Queue capacity must be at least 1");
+		}
+		this.frameProcessor = frameProcessor;
+		this.frameQueue = new ArrayBlockingQueue<byte[]>(queueCapacity);
+	}
+
+	public void setBufferRecycler(BufferRecycler recycler) {
+		this.bufferRecycler = recycler;
+	}
+
+	public void setFrameSize(int width, int height) {
+		this.frameWidth = width;
+		this.frameHeight = height;
+	}
+
+	public synchronized void start() {
+		if (running) return;
+		drainQueue();
+		running = true;
+		workerThread = new Thread(new Runnable() {
+			public void run() {
+				processFrames();
+			}
+		}, "PreviewFramePipeline");
+		workerThread.setDaemon(true);
+		workerThread.start();
+	}
+
+	/**
+	 * Stops the worker thread, waiting for the frame being processed to finish. Frames still in
+	 * the queue are recycled without being processed.
+	 */
+	public synchronized void stop() {
+		if (!running) return;
+		synchronized(queueLock) {
+			running = false;
+		}
+		workerThread.interrupt();
+		try {
+			workerThread.join();
+		}
+		catch(InterruptedException ignored) {
+			Thread.currentThread().interrupt();
+		}
+		workerThread = null;
+		drainQueue();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Queues a frame for processing without blocking. Returns false if the frame was dropped
+	 * because the pipeline is stopped or the queue is full; the buffer has then already been
+	 * recycled.
+	 */
+	public boolean submitFrame(byte[] frame) {
+		synchronized(queueLock) {
+			if (running && frameQueue.offer(frame)) {
+				return true;
+			}
+		}
+		framesDropped.incrementAndGet();
+		recycle(frame);
+		return false;
+	}
+
+	void processFrames() {
+		while (running) {
+			byte[] frame;
+			try {
+				frame = frameQueue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			catch(InterruptedException ex) {
+				break;
+			}
+			if (frame==null) continue;
+			if (!hasFrameSize(frame)) {
+				// captured before the preview size changed; width and height no longer describe it
+				framesDropped.incrementAndGet();
+				recycle(frame);
+				continue;
+			}
+			try {
+				frameProcessor.processFrame(frame, frameWidth, frameHeight);
+			}
+			catch(RuntimeException ex) {
+				if (processingFailures.getAndIncrement()==0) firstFailure = ex;
+			}
+			finally {
+				framesProcessed.incrementAndGet();
+				recycle(frame);
+			}
+		}
+	}
+
+	void drainQueue() {
+		byte[] frame;
+		while ((frame = frameQueue.poll()) != null) {
+			framesDropped.incrementAndGet();
+			recycle(frame);
+		}
+	}
+
+	// NV21 frame buffers; true if the frame size isn't known yet
+	boolean hasFrameSize(byte[] buffer) {
+		int width = frameWidth, height = frameHeight;
+		return width<=0 || height<=0 || buffer.length==width * height * 3 / 2;
+	}
+
+	void recycle(byte[] buffer) {
+		if (buffer==null) return;
+		if (!hasFrameSize(buffer)) {
+			// the camera allocates new buffers when the preview size changes
+			buffersDiscarded.incrementAndGet();
+			return;
+		}
+		BufferRecycler recycler = bufferRecycler;
+		if (recycler!=null) {
+			recycler.recycleBuffer(buffer);
+		}
+	}
+
+	public long getFramesProcessed() {
+		return framesProcessed.get();
+	}
+
+	public long getFramesDropped() {
+		return framesDropped.get();
+	}
+
+	public long getBuffersDiscarded() {
+		return buffersDiscarded.get();
+	}
+
+	public long getProcessingFailures() {
+		return processingFailures.get();
+	}
+
+	/** The first exception thrown by the FrameProcessor, or null if it has never failed. */
+	public RuntimeException getFirstFailure() {
+		return firstFailure;
+	}
+
+	public void resetCounters() {
+		framesProcessed.set(0);
+		framesDropped.set(0);
+		buffersDiscarded.set(0);
+		processingFailures.set(0);
+		firstFailure = null;
+	}
+}
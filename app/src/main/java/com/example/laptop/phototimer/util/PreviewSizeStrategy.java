@@ -0,0 +1,18 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.List;
+
+/**
+ * Chooses a camera preview size from the sizes a camera supports. Sizes are {width, height} arrays so
+ * strategies can be tested without a camera.
+ */
+public interface PreviewSizeStrategy {
+
+	/**
+	 * Returns the index in candidates of the chosen size, or -1 if there are no candidates.
+	 * @param viewSize {width, height} of the view showing the preview
+	 * @param captureSize {width, height} of the picture size, or null if not known
+	 * @param fpsRanges supported {min, max} preview frame rates scaled by 1000, or null if not known
+	 */
+	int selectPreviewSize(List<int[]> candidates, int[] viewSize, int[] captureSize, List<int[]> fpsRanges);
+}
@@ -0,0 +1,79 @@
+package com.example.laptop.phototimer.util;
+
+/**
+ * Timings of a screen that shows one or more images progressively: a cached placeholder first,
+ * then the full resolution decode. Times are System.nanoTime values measured from the time the
+ * screen was opened. Only the first mark of each kind for each image counts.
+ */
+public class ProgressiveLoadMetrics {
+
+	final String label;
+	final long openedNanos;
+	final long[] placeholderTimes;
+	final long[] fullResolutionTimes;
+
+	public ProgressiveLoadMetrics(String label, int imageCount, long openedNanos) {
+		this.label = label;
+		this.openedNanos = openedNanos;
+		this.placeholderTimes = new long[imageCount];
+		this.fullResolutionTimes = new long[imageCount];
+		for(int i=0; i<imageCount; i++) {
+			placeholderTimes[i] = fullResolutionTimes[i] = -1;
+		}
+	}
+
+	public int getImageCount() {
+		return placeholderTimes.length;
+	}
+
+	public synchronized void placeholderShown(int index, long nanos) {
+		if (placeholderTimes[index]<0) placeholderTimes[index] = nanos - openedNanos;
+	}
+
+	public synchronized void fullResolutionShown(int index, long nanos) {
+		if (fullResolutionTimes[index]<0) fullResolutionTimes[index] = nanos - openedNanos;
+	}
+
+	/** Time until any image, placeholder or full resolution, was shown; -1 if none has been. */
+	public synchronized long timeToFirstImageNanos() {
+		long first = -1;
+		for(int i=0; i<placeholderTimes.length; i++) {
+			first = earliest(first, placeholderTimes[i]);
+			first = earliest(first, fullResolutionTimes[i]);
+		}
+		return first;
+	}
+
+	static long earliest(long a, long b) {
+		if (a<0) return b;
+		if (b<0) return a;
+		return Math.min(a, b);
+	}
+
+	/** Time until every image was shown at full resolution; -1 until then. */
+	public synchronized long timeToFullResolutionNanos() {
+		long last = -1;
+		for(long time : fullResolutionTimes) {
+			if (time<0) return -1;
+			last = Math.max(last, time);
+		}
+		return last;
+	}
+
+	public synchronized int getPlaceholderCount() {
+		int count = 0;
+		for(long time : placeholderTimes) {
+			if (time>=0) count++;
+		}
+		return count;
+	}
+
+	public synchronized String summary() {
+		long first = timeToFirstImageNanos();
+		long full = timeToFullResolutionNanos();
+		return String.format("%s: first image %s, full resolution %s, %d of %d from cached thumbnails", label,
+				(first>=0) ? String.format("+%.1fms", first / 1e6) : "none",
+				(full>=0) ? String.format("+%.1fms", full / 1e6) : "incomplete",
+				getPlaceholderCount(), placeholderTimes.length);
+	}
+}
@@ -3,10 +3,13 @@ package com.example.laptop.phototimer.util;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Bitmap.CompressFormat;
 import android.net.Uri;
 import android.support.v4.util.LruCache;
@@ -14,12 +17,20 @@ import android.support.v4.util.LruCache;
 
 public class ScaledBitmapCache {
 
-    static int MEMORY_CACHE_SIZE = 2*1024*1024;
+    static int MIN_MEMORY_CACHE_SIZE = 2*1024*1024;
+    static int MEMORY_CACHE_HEAP_FRACTION = 8;
+    static long DEFAULT_DISK_CACHE_SIZE = 32*1024*1024;
+    static String INDEX_FILENAME = ".thumbindex";
 	
 	public static interface ThumbnailLocator {
 		File thumbnailFileForUri(Uri imageUri);
 	}
 
+	public static interface ThumbnailListener {
+		// called on the thread that wrote the thumbnail
+		void thumbnailWritten(Uri imageUri, File thumbnailFile);
+	}
+
 	public static ThumbnailLocator createFixedDirectoryLocator(final String thumbnailDirectory) {
 	    return new ThumbnailLocator() {
 	        public File thumbnailFileForUri(Uri imageUri) {
@@ -29,48 +40,119 @@ public class ScaledBitmapCache {
 	    };
 	}
 
+	public static int memoryCacheSizeForHeap(long maxHeapBytes) {
+	    long size = maxHeapBytes / MEMORY_CACHE_HEAP_FRACTION;
+	    return (int)Math.min(Integer.MAX_VALUE, Math.max(MIN_MEMORY_CACHE_SIZE, size));
+	}
+
 	Context context;
 	ThumbnailLocator thumbnailLocator;
+	ThumbnailDiskIndex diskIndex;
+	volatile ThumbnailListener thumbnailListener;
+
+	// The memory tier is shared by every instance, so a bitmap decoded for one screen is
+	// available to the next, and the heap budget applies to the whole process.
+	static CacheStats memoryStats = new CacheStats("memory");
 	
-	LruCache<Uri, Bitmap> scaledBitmapCache = new LruCache<Uri, Bitmap>(MEMORY_CACHE_SIZE) {
+	static LruCache<Uri, Bitmap> scaledBitmapCache = new LruCache<Uri, Bitmap>(memoryCacheSizeForHeap(Runtime.getRuntime().maxMemory())) {
 	    @Override protected int sizeOf(Uri uri, Bitmap bitmap) {
 	        int size = AndroidUtils.getBitmapByteCount(bitmap);
 	        return size;
 	    }
+
+	    @Override protected void entryRemoved(boolean evicted, Uri uri, Bitmap oldValue, Bitmap newValue) {
+	        if (evicted) memoryStats.recordEviction();
+	    }
 	};
-	
-	public ScaledBitmapCache(Context context, ThumbnailLocator thumbnailLocator) {
+
+	public ScaledBitmapCache(Context context, ThumbnailLocator thumbnailLocator, ThumbnailDiskIndex diskIndex) {
 		this.context = context;
 		this.thumbnailLocator = thumbnailLocator;
+		this.diskIndex = diskIndex;
+	}
+
+	public ScaledBitmapCache(Context context, ThumbnailLocator thumbnailLocator) {
+		this(context, thumbnailLocator, null);
 	}
 	
 	public ScaledBitmapCache(Context context, String imageDirectory) {
-		this(context, createFixedDirectoryLocator(imageDirectory));
+		this(context, createFixedDirectoryLocator(imageDirectory), sharedDiskIndex(imageDirectory));
+	}
+
+	public void setThumbnailListener(ThumbnailListener listener) {
+		this.thumbnailListener = listener;
+	}
+
+	static Map<String, ThumbnailDiskIndex> diskIndexes = new HashMap<String, ThumbnailDiskIndex>();
+
+	// one index per directory, so separate instances don't append to and compact the same log
+	static synchronized ThumbnailDiskIndex sharedDiskIndex(String imageDirectory) {
+		ThumbnailDiskIndex index = diskIndexes.get(imageDirectory);
+		if (index==null) {
+			index = new ThumbnailDiskIndex(new File(imageDirectory, INDEX_FILENAME), DEFAULT_DISK_CACHE_SIZE);
+			diskIndexes.put(imageDirectory, index);
+		}
+		return index;
 	}
 	
-	public Bitmap getInMemoryScaledBitmap(Uri imageUri, int minWidth, int minHeight) {
+	Bitmap lookupInMemory(Uri imageUri, int minWidth, int minHeight) {
         Bitmap bitmap = scaledBitmapCache.get(imageUri);
         if (bitmap!=null && bitmap.getWidth()>=minWidth && bitmap.getHeight()>=minHeight) {
             return bitmap;
         }
         return null;
 	}
+
+	/** Adds a bitmap decoded elsewhere, for example from the capture data, to the memory tier. */
+	public void putInMemory(Uri imageUri, Bitmap bitmap) {
+		scaledBitmapCache.put(imageUri, bitmap);
+	}
+
+	/**
+	 * Stores a thumbnail made elsewhere, for example from the capture data, in the disk tier, and in
+	 * the memory tier unless that already holds a bitmap for the image. Call it once the image file
+	 * has been written, so the thumbnail is recorded against the file's modification time.
+	 */
+	public void putThumbnail(Uri imageUri, Bitmap bitmap) {
+		if (scaledBitmapCache.get(imageUri)==null) {
+			scaledBitmapCache.put(imageUri, bitmap);
+		}
+		writeThumbnail(imageUri, bitmap, thumbnailLocator.thumbnailFileForUri(imageUri), sourceModificationTime(imageUri));
+	}
+
+	// Probe from the UI thread; a miss here is followed by getScaledBitmap, which records it.
+	public Bitmap getInMemoryScaledBitmap(Uri imageUri, int minWidth, int minHeight) {
+        Bitmap bitmap = lookupInMemory(imageUri, minWidth, minHeight);
+        if (bitmap!=null) memoryStats.recordHit();
+        return bitmap;
+	}
 	
+	/**
+	 * Returns a bitmap from the memory or disk tier without decoding the source image, or null if
+	 * neither has one at least the given size. Reads files, so call it from a background thread.
+	 */
+	public Bitmap getCachedScaledBitmap(Uri imageUri, int minWidth, int minHeight) {
+		Bitmap bitmap = lookupInMemory(imageUri, minWidth, minHeight);
+		if (bitmap!=null) {
+			memoryStats.recordHit();
+			return bitmap;
+		}
+		memoryStats.recordMiss();
+		return lookupOnDisk(imageUri, minWidth, minHeight, sourceModificationTime(imageUri));
+	}
+
 	public Bitmap getScaledBitmap(Uri imageUri, int minWidth, int minHeight) {
-		Bitmap bitmap = getInMemoryScaledBitmap(imageUri, minWidth, minHeight);
-		if (bitmap!=null) return bitmap;
+		Bitmap bitmap = lookupInMemory(imageUri, minWidth, minHeight);
+		if (bitmap!=null) {
+			memoryStats.recordHit();
+			return bitmap;
+		}
+		memoryStats.recordMiss();
 
-		File thumbfile = thumbnailLocator.thumbnailFileForUri(imageUri);
-		if (thumbfile!=null && thumbfile.isFile()) {
-			try {
-				bitmap = AndroidUtils.scaledBitmapFromURIWithMinimumSize(context, 
-						Uri.fromFile(thumbfile), minWidth, minHeight);
-				if (bitmap!=null && bitmap.getWidth()>=minWidth && bitmap.getHeight()>=minHeight) {
-					scaledBitmapCache.put(imageUri, bitmap);
-					return bitmap;
-				}
-			}
-			catch(Exception ignored) {}
+		long sourceModified = sourceModificationTime(imageUri);
+		bitmap = lookupOnDisk(imageUri, minWidth, minHeight, sourceModified);
+		if (bitmap!=null) {
+			return bitmap;
 		}
 
 		try {
@@ -81,20 +163,101 @@ public class ScaledBitmapCache {
 		}
 		if (bitmap!=null) {
 			scaledBitmapCache.put(imageUri, bitmap);
-			try {
-				thumbfile.getParentFile().mkdirs();
-				OutputStream thumbnailOutputStream = new FileOutputStream(thumbfile);
-				bitmap.compress(CompressFormat.JPEG, 90, thumbnailOutputStream);
-				thumbnailOutputStream.close();
-				(new File(thumbfile.getParentFile().getPath() + File.separator + ".nomedia")).createNewFile();
+			// larger decodes for viewers would replace the library's thumbnail and fill the disk tier
+			if (DecodePlanner.isThumbnailTarget(minWidth, minHeight)) {
+				writeThumbnail(imageUri, bitmap, thumbnailLocator.thumbnailFileForUri(imageUri), sourceModified);
 			}
-			catch(Exception ignored) {}
 		}
 		return bitmap;
 	}
+
+	Bitmap lookupOnDisk(Uri imageUri, int minWidth, int minHeight, long sourceModified) {
+		Bitmap bitmap = null;
+		if (diskIndex!=null) {
+			ThumbnailDiskIndex.Entry entry = diskIndex.get(imageUri.toString(), sourceModified);
+			if (entry==null) {
+				entry = adoptUnindexedThumbnail(imageUri, sourceModified);
+			}
+			if (entry!=null && entry.width>=minWidth && entry.height>=minHeight) {
+				bitmap = AndroidUtils.scaledBitmapFromFileWithKnownSize(entry.thumbnailPath,
+						entry.width, entry.height, minWidth, minHeight);
+			}
+		}
+		else {
+			File thumbfile = thumbnailLocator.thumbnailFileForUri(imageUri);
+			if (thumbfile!=null && thumbfile.isFile()) {
+				try {
+					bitmap = AndroidUtils.scaledBitmapFromURIWithMinimumSize(context, 
+							Uri.fromFile(thumbfile), minWidth, minHeight);
+				}
+				catch(Exception ignored) {}
+			}
+		}
+		if (bitmap!=null && bitmap.getWidth()>=minWidth && bitmap.getHeight()>=minHeight) {
+			scaledBitmapCache.put(imageUri, bitmap);
+			return bitmap;
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a thumbnail written before the disk index existed to the index, so it is used and counted
+	 * against the disk budget. Returns null if there is none, or it is older than the source image.
+	 */
+	ThumbnailDiskIndex.Entry adoptUnindexedThumbnail(Uri imageUri, long sourceModified) {
+		File thumbfile = thumbnailLocator.thumbnailFileForUri(imageUri);
+		if (thumbfile==null || !thumbfile.isFile() || thumbfile.lastModified() < sourceModified) return null;
+		try {
+			BitmapFactory.Options bounds = AndroidUtils.computeBitmapSizeFromURI(context, Uri.fromFile(thumbfile));
+			if (bounds.outWidth<=0 || bounds.outHeight<=0) return null;
+			ThumbnailDiskIndex.Entry entry = new ThumbnailDiskIndex.Entry(imageUri.toString(), thumbfile.getPath(),
+					bounds.outWidth, bounds.outHeight, sourceModified, thumbfile.length());
+			diskIndex.put(entry);
+			return entry;
+		}
+		catch(Exception ex) {
+			return null;
+		}
+	}
+
+	void writeThumbnail(Uri imageUri, Bitmap bitmap, File thumbfile, long sourceModified) {
+		if (thumbfile==null) return;
+		try {
+			thumbfile.getParentFile().mkdirs();
+			OutputStream thumbnailOutputStream = new FileOutputStream(thumbfile);
+			bitmap.compress(CompressFormat.JPEG, 90, thumbnailOutputStream);
+			thumbnailOutputStream.close();
+			(new File(thumbfile.getParentFile().getPath() + File.separator + ".nomedia")).createNewFile();
+			if (diskIndex!=null) {
+				diskIndex.put(new ThumbnailDiskIndex.Entry(imageUri.toString(), thumbfile.getPath(),
+						bitmap.getWidth(), bitmap.getHeight(), sourceModified, thumbfile.length()));
+			}
+			ThumbnailListener listener = thumbnailListener;
+			if (listener!=null) listener.thumbnailWritten(imageUri, thumbfile);
+		}
+		catch(Exception ignored) {}
+	}
+
+	static long sourceModificationTime(Uri imageUri) {
+		if ("file".equals(imageUri.getScheme())) {
+			return (new File(imageUri.getPath())).lastModified();
+		}
+		return 0;
+	}
 	
 	public void removeUri(Uri imageUri) {
 		scaledBitmapCache.remove(imageUri);
+		if (diskIndex!=null) {
+			diskIndex.remove(imageUri.toString());
+		}
 		thumbnailLocator.thumbnailFileForUri(imageUri).delete();
 	}
+
+	public CacheStats getMemoryStats() {
+		return memoryStats;
+	}
+
+	public CacheStats getDiskStats() {
+		return (diskIndex!=null) ? diskIndex.getStats() : null;
+	}
 }
@@ -0,0 +1,98 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.List;
+
+/**
+ * Scores each candidate preview size and picks the lowest score. A candidate's score has four parts:
+ * - how far its aspect ratio is from the capture size's, so the preview shows what the picture will
+ *   contain
+ * - how much it would be scaled up when fitted inside the view, with a smaller penalty for
+ *   being larger than the view needs
+ * - how far it exceeds the pixel budget of the preview callback pipeline
+ * - how far its NV21 byte rate at the highest supported frame rate exceeds the throughput budget
+ * Sizes are compared long side to long side, so a portrait view matches landscape camera sizes.
+ */
+public class ScoredPreviewSizeStrategy implements PreviewSizeStrategy {
+
+	public static final int DEFAULT_MAX_PREVIEW_PIXELS = 1920 * 1080;
+	public static final int DEFAULT_FPS = 30;
+
+	double aspectWeight = 20;
+	double upscaleWeight = 4;
+	double oversizeWeight = 0.5;
+	double budgetWeight = 10;
+	long maxPreviewPixels = DEFAULT_MAX_PREVIEW_PIXELS;
+	long maxBytesPerSecond = DEFAULT_MAX_PREVIEW_PIXELS * 3L / 2 * DEFAULT_FPS;
+
+	public void setMaxPreviewPixels(long pixels) {
+		this.maxPreviewPixels = pixels;
+	}
+
+	public void setMaxBytesPerSecond(long bytesPerSecond) {
+		this.maxBytesPerSecond = bytesPerSecond;
+	}
+
+	public void setAspectWeight(double weight) {
+		this.aspectWeight = weight;
+	}
+
+	@Override
+	public int selectPreviewSize(List<int[]> candidates, int[] viewSize, int[] captureSize, List<int[]> fpsRanges) {
+		int maxFps = maxFrameRate(fpsRanges);
+		int bestIndex = -1;
+		double bestScore = 0;
+		for(int i=0; i<candidates.size(); i++) {
+			double score = scoreCandidate(candidates.get(i), viewSize, captureSize, maxFps);
+			if (bestIndex<0 || score<bestScore) {
+				bestIndex = i;
+				bestScore = score;
+			}
+		}
+		return bestIndex;
+	}
+
+	// highest frame rate in the supported ranges, in frames per second
+	static int maxFrameRate(List<int[]> fpsRanges) {
+		if (fpsRanges==null || fpsRanges.size()==0) return DEFAULT_FPS;
+		int max = 0;
+		for(int[] range : fpsRanges) {
+			max = Math.max(max, range[1]);
+		}
+		return (max + 999) / 1000;
+	}
+
+	/** Returns the score of one candidate; lower is better. */
+	public double scoreCandidate(int[] size, int[] viewSize, int[] captureSize, int maxFps) {
+		double longSide = Math.max(size[0], size[1]);
+		double shortSide = Math.min(size[0], size[1]);
+		double score = 0;
+
+		if (captureSize!=null && captureSize[0]>0 && captureSize[1]>0) {
+			double captureAspect = (double)Math.max(captureSize[0], captureSize[1]) / Math.min(captureSize[0], captureSize[1]);
+			score += aspectWeight * Math.abs(Math.log((longSide / shortSide) / captureAspect));
+		}
+
+		if (viewSize!=null && viewSize[0]>0 && viewSize[1]>0) {
+			double viewLong = Math.max(viewSize[0], viewSize[1]);
+			double viewShort = Math.min(viewSize[0], viewSize[1]);
+			// scale at which the preview is shown, fitted inside the view
+			double fit = Math.min(viewLong / longSide, viewShort / shortSide);
+			if (fit > 1) {
+				score += upscaleWeight * (fit - 1);
+			}
+			else {
+				score += oversizeWeight * (1 / (fit * fit) - 1);
+			}
+		}
+
+		long pixels = (long)size[0] * size[1];
+		if (maxPreviewPixels > 0 && pixels > maxPreviewPixels) {
+			score += budgetWeight * (1 + (double)pixels / maxPreviewPixels);
+		}
+		long bytesPerSecond = pixels * 3 / 2 * maxFps;
+		if (maxBytesPerSecond > 0 && bytesPerSecond > maxBytesPerSecond) {
+			score += budgetWeight * (1 + (double)bytesPerSecond / maxBytesPerSecond);
+		}
+		return score;
+	}
+}
@@ -0,0 +1,165 @@
+package com.example.laptop.phototimer.util;
+
+/**
+ * Preview frame processor that reports when the scene has stopped moving. Once armed, it fires when
+ * the fraction of changed pixels between analyzed frames (see FrameDifferencer) stays at or below the
+ * still threshold for the still duration. It also fires, flagged as timed out, once the timeout
+ * passes. Then it disarms itself.
+ *
+ * Analysis of each frame is timed against a per-frame budget. When a frame goes over budget, the
+ * detector only analyzes every second, third or fourth frame until processing is comfortably within
+ * budget again. The listener is called on the processing thread.
+ */
+public class StillnessDetector implements PreviewFramePipeline.FrameProcessor {
+
+	public static interface Listener {
+		void stillnessDetected(boolean timedOut, long waitNanos);
+	}
+
+	public static final int DEFAULT_DECIMATION = 4;
+	public static final int DEFAULT_PIXEL_THRESHOLD = 24;
+	public static final float DEFAULT_STILL_THRESHOLD = 0.01f;
+	public static final long DEFAULT_STILL_DURATION_NANOS = 1000000000L;
+	public static final long DEFAULT_TIMEOUT_NANOS = 5000000000L;
+	public static final long DEFAULT_FRAME_BUDGET_NANOS = 8000000L;
+	static final int MAX_FRAME_STRIDE = 4;
+	static final int TIMING_WINDOW = 64;
+
+	final Listener listener;
+	final IntervalScheduler.Clock clock;
+	final FrameDifferencer differencer;
+	float stillThreshold = DEFAULT_STILL_THRESHOLD;
+	long stillDurationNanos = DEFAULT_STILL_DURATION_NANOS;
+	long timeoutNanos = DEFAULT_TIMEOUT_NANOS;
+	long frameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+
+	volatile boolean armed = false;
+	long armedTime;
+	long stillSince = -1;
+	int frameCounter = 0;
+	int frameStride = 1;
+	long framesAnalyzed = 0;
+	long framesSkipped = 0;
+	long framesOverBudget = 0;
+	final FrameTimeStats processingTimes = new FrameTimeStats(TIMING_WINDOW);
+
+	public StillnessDetector(Listener listener) {
+		this(listener, IntervalScheduler.SYSTEM_CLOCK);
+	}
+
+	public StillnessDetector(Listener listener, IntervalScheduler.Clock clock) {
+		this.listener = listener;
+		this.clock = clock;
+		this.differencer = new FrameDifferencer(DEFAULT_DECIMATION, DEFAULT_PIXEL_THRESHOLD);
+	}
+
+	public synchronized void setStillThreshold(float threshold) {
+		this.stillThreshold = threshold;
+	}
+
+	public synchronized void setStillDurationNanos(long nanos) {
+		this.stillDurationNanos = nanos;
+	}
+
+	public synchronized void setTimeoutNanos(long nanos) {
+		this.timeoutNanos = nanos;
+	}
+
+	public synchronized long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+
+	public synchronized void setFrameBudgetNanos(long nanos) {
+		this.frameBudgetNanos = nanos;
+	}
+
+	public synchronized void arm() {
+		differencer.reset();
+		armedTime = clock.nanoTime();
+		stillSince = -1;
+		frameCounter = 0;
+		armed = true;
+	}
+
+	public synchronized void disarm() {
+		armed = false;
+	}
+
+	public boolean isArmed() {
+		return armed;
+	}
+
+	@Override
+	public void processFrame(byte[] frame, int width, int height) {
+		if (!armed) return;
+		boolean fire = false;
+		boolean timedOut = false;
+		long waitNanos;
+		synchronized(this) {
+			if (!armed) return;
+			long now = clock.nanoTime();
+			waitNanos = now - armedTime;
+			if (waitNanos >= timeoutNanos) {
+				fire = timedOut = true;
+			}
+			else if (++frameCounter % frameStride != 0) {
+				framesSkipped++;
+			}
+			else {
+				long startTime = System.nanoTime();
+				float fraction = differencer.changedFraction(frame, width, height);
+				if (fraction>=0 && fraction<=stillThreshold) {
+					if (stillSince<0) stillSince = now;
+					fire = (now - stillSince >= stillDurationNanos);
+				}
+				else {
+					stillSince = -1;
+				}
+				framesAnalyzed++;
+				recordProcessingTime(System.nanoTime() - startTime);
+			}
+			if (fire) armed = false;
+		}
+		if (fire && listener!=null) {
+			listener.stillnessDetected(timedOut, waitNanos);
+		}
+	}
+
+	// adjusts how many frames are skipped so analysis stays within the per-frame budget
+	synchronized void recordProcessingTime(long nanos) {
+		processingTimes.recordInterval(nanos);
+		if (nanos > frameBudgetNanos) {
+			framesOverBudget++;
+			frameStride = Math.min(MAX_FRAME_STRIDE, frameStride + 1);
+		}
+		else if (nanos < frameBudgetNanos / 2 && frameStride > 1) {
+			frameStride--;
+		}
+	}
+
+	public synchronized int getFrameStride() {
+		return frameStride;
+	}
+
+	public synchronized long getFramesAnalyzed() {
+		return framesAnalyzed;
+	}
+
+	public synchronized long getFramesSkipped() {
+		return framesSkipped;
+	}
+
+	public synchronized long getFramesOverBudget() {
+		return framesOverBudget;
+	}
+
+	public synchronized long processingTimePercentileNanos(double percentile) {
+		return processingTimes.percentileNanos(percentile);
+	}
+
+	public synchronized String debugInfo() {
+		return String.format("%d frames analyzed, %d skipped, %d over the %.1fms budget, processing median %.2fms p95 %.2fms",
+				framesAnalyzed, framesSkipped, framesOverBudget, frameBudgetNanos / 1e6,
+				processingTimes.medianNanos() / 1e6, processingTimes.percentileNanos(95) / 1e6);
+	}
+}
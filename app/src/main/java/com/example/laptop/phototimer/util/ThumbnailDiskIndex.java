@@ -0,0 +1,230 @@
+package com.example.laptop.phototimer.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent index of thumbnail files, keyed by source image URI. The index is an append-only
+ * log of PUT and DEL records that is read once on first use and compacted when it grows to
+ * several times the number of live entries. Entries are kept in access order and the least
+ * recently used thumbnails are deleted when the total size exceeds the configured limit.
+ */
+public class ThumbnailDiskIndex {
+
+	public static class Entry {
+		public final String key;
+		public final String thumbnailPath;
+		public final int width;
+		public final int height;
+		public final long sourceModified;
+		public final long byteSize;
+
+		public Entry(String key, String thumbnailPath, int width, int height, long sourceModified, long byteSize) {
+			this.key = key;
+			this.thumbnailPath = thumbnailPath;
+			this.width = width;
+			this.height = height;
+			this.sourceModified = sourceModified;
+			this.byteSize = byteSize;
+		}
+	}
+
+	static final String PUT = "PUT";
+	static final String DEL = "DEL";
+	static final String SEPARATOR = "\t";
+	static final int MIN_RECORDS_BEFORE_COMPACTION = 64;
+
+	File indexFile;
+	long maxBytes;
+	LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	long totalBytes = 0;
+	int recordCount = 0;
+	boolean loaded = false;
+	CacheStats stats = new CacheStats("disk");
+
+	public ThumbnailDiskIndex(File indexFile, long maxBytes) {
+		this.indexFile = indexFile;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the entry for the key if it was recorded for the same source modification time.
+	 * Entries for a modified source are removed and their thumbnail deleted.
+	 */
+	public synchronized Entry get(String key, long sourceModified) {
+		ensureLoaded();
+		Entry entry = entries.get(key);
+		if (entry!=null && entry.sourceModified!=sourceModified) {
+			removeEntry(key, true);
+			entry = null;
+		}
+		if (entry!=null) {
+			stats.recordHit();
+		}
+		else {
+			stats.recordMiss();
+		}
+		return entry;
+	}
+
+	public synchronized void put(Entry entry) {
+		ensureLoaded();
+		Entry previous = entries.put(entry.key, entry);
+		if (previous!=null) {
+			totalBytes -= previous.byteSize;
+		}
+		totalBytes += entry.byteSize;
+		appendRecord(putRecord(entry));
+		trimToSize();
+		compactIfNeeded();
+	}
+
+	public synchronized void remove(String key) {
+		ensureLoaded();
+		removeEntry(key, true);
+	}
+
+	public synchronized int size() {
+		ensureLoaded();
+		return entries.size();
+	}
+
+	public synchronized long totalBytes() {
+		ensureLoaded();
+		return totalBytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public CacheStats getStats() {
+		return stats;
+	}
+
+	void removeEntry(String key, boolean deleteFile) {
+		Entry entry = entries.remove(key);
+		if (entry!=null) {
+			totalBytes -= entry.byteSize;
+			appendRecord(DEL + SEPARATOR + key);
+			if (deleteFile) {
+				(new File(entry.thumbnailPath)).delete();
+			}
+		}
+	}
+
+	void trimToSize() {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		List<Entry> evicted = new ArrayList<Entry>();
+		while (totalBytes > maxBytes && it.hasNext()) {
+			Entry eldest = it.next().getValue();
+			it.remove();
+			totalBytes -= eldest.byteSize;
+			evicted.add(eldest);
+		}
+		for(Entry entry : evicted) {
+			appendRecord(DEL + SEPARATOR + entry.key);
+			(new File(entry.thumbnailPath)).delete();
+			stats.recordEviction();
+		}
+	}
+
+	void ensureLoaded() {
+		if (loaded) return;
+		loaded = true;
+		if (!indexFile.isFile()) return;
+
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(indexFile));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				++recordCount;
+				String[] fields = line.split(SEPARATOR);
+				if (fields.length==7 && PUT.equals(fields[0])) {
+					try {
+						Entry entry = new Entry(fields[1], fields[2], Integer.parseInt(fields[3]), Integer.parseInt(fields[4]),
+								Long.parseLong(fields[5]), Long.parseLong(fields[6]));
+						Entry previous = entries.put(entry.key, entry);
+						if (previous!=null) totalBytes -= previous.byteSize;
+						totalBytes += entry.byteSize;
+					}
+					catch(NumberFormatException ignored) {}
+				}
+				else if (fields.length==2 && DEL.equals(fields[0])) {
+					Entry previous = entries.remove(fields[1]);
+					if (previous!=null) totalBytes -= previous.byteSize;
+				}
+			}
+		}
+		catch(IOException ignored) {}
+		finally {
+			closeQuietly(reader);
+		}
+		trimToSize();
+		compactIfNeeded();
+	}
+
+	static String putRecord(Entry entry) {
+		return PUT + SEPARATOR + entry.key + SEPARATOR + entry.thumbnailPath + SEPARATOR + entry.width +
+				SEPARATOR + entry.height + SEPARATOR + entry.sourceModified + SEPARATOR + entry.byteSize;
+	}
+
+	void appendRecord(String record) {
+		Writer writer = null;
+		try {
+			indexFile.getParentFile().mkdirs();
+			writer = new FileWriter(indexFile, true);
+			writer.write(record);
+			writer.write('\n');
+			++recordCount;
+		}
+		catch(IOException ignored) {}
+		finally {
+			closeQuietly(writer);
+		}
+	}
+
+	void compactIfNeeded() {
+		if (recordCount < MIN_RECORDS_BEFORE_COMPACTION || recordCount < 2*entries.size()) return;
+
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+		Writer writer = null;
+		try {
+			writer = new FileWriter(tempFile);
+			for(Entry entry : entries.values()) {
+				writer.write(putRecord(entry));
+				writer.write('\n');
+			}
+			writer.close();
+			writer = null;
+			if (tempFile.renameTo(indexFile)) {
+				recordCount = entries.size();
+			}
+		}
+		catch(IOException ignored) {}
+		finally {
+			closeQuietly(writer);
+			tempFile.delete();
+		}
+	}
+
+	static void closeQuietly(Closeable closeable) {
+		if (closeable!=null) {
+			try {
+				closeable.close();
+			}
+			catch(IOException ignored) {}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.example.laptop.phototimer.util;
+
+import java.util.List;
+
+/**
+ * Tile geometry for showing parts of a large image at different zoom levels. At sample size s each
+ * tile covers tileSize*s source pixels on a side and decodes to at most tileSize x tileSize pixels,
+ * so tiles cost the same memory at every zoom level. Tiles at the right and bottom edges are clipped
+ * to the image.
+ */
+public class TileLayout {
+
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	public static class TileKey {
+		final int sampleSize;
+		final int column;
+		final int row;
+
+		public TileKey(int sampleSize, int column, int row) {
+			this.sampleSize = sampleSize;
+			this.column = column;
+			this.row = row;
+		}
+
+		public int getSampleSize() {
+			return sampleSize;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		public int getRow() {
+			return row;
+		}
+
+		/** The tile at twice the sample size that covers this one. */
+		public TileKey parent() {
+			return new TileKey(sampleSize * 2, column / 2, row / 2);
+		}
+
+		@Override public boolean equals(Object obj) {
+			if (!(obj instanceof TileKey)) return false;
+			TileKey other = (TileKey)obj;
+			return sampleSize==other.sampleSize && column==other.column && row==other.row;
+		}
+
+		@Override public int hashCode() {
+			return (sampleSize * 31 + column) * 31 + row;
+		}
+
+		@Override public String toString() {
+			return "Tile(" + sampleSize + ":" + column + "," + row + ")";
+		}
+	}
+
+	final int imageWidth;
+	final int imageHeight;
+	final int tileSize;
+
+	public TileLayout(int imageWidth, int imageHeight, int tileSize) {
+		if (tileSize<1) {
+			throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+		}
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+		this.tileSize = tileSize;
+	}
+
+	public TileLayout(int imageWidth, int imageHeight) {
+		this(imageWidth, imageHeight, DEFAULT_TILE_SIZE);
+	}
+
+	public int getImageWidth() {
+		return imageWidth;
+	}
+
+	public int getImageHeight() {
+		return imageHeight;
+	}
+
+	/**
+	 * Returns the largest power-of-two sample size that still gives at least one decoded pixel per
+	 * display pixel when the image is shown at the given scale (display pixels per image pixel).
+	 */
+	public static int sampleSizeForScale(float scale) {
+		if (scale<=0) return 1;
+		int sampleSize = 1;
+		while (sampleSize * 2 * scale <= 1) {
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+
+	public int sourceTileSize(int sampleSize) {
+		return tileSize * sampleSize;
+	}
+
+	public int columnCount(int sampleSize) {
+		int size = sourceTileSize(sampleSize);
+		return (imageWidth + size - 1) / size;
+	}
+
+	public int rowCount(int sampleSize) {
+		int size = sourceTileSize(sampleSize);
+		return (imageHeight + size - 1) / size;
+	}
+
+	/** Fills bounds with the tile's source rectangle as {left, top, right, bottom}. */
+	public void tileBounds(TileKey key, int[] bounds) {
+		int size = sourceTileSize(key.sampleSize);
+		bounds[0] = key.column * size;
+		bounds[1] = key.row * size;
+		bounds[2] = Math.min(imageWidth, bounds[0] + size);
+		bounds[3] = Math.min(imageHeight, bounds[1] + size);
+	}
+
+	public int[] tileBounds(TileKey key) {
+		int[] bounds = new int[4];
+		tileBounds(key, bounds);
+		return bounds;
+	}
+
+	/**
+	 * Clears tiles and adds the tiles at the given sample size that intersect the source rectangle,
+	 * row by row. The rectangle is clipped to the image.
+	 */
+	public void visibleTiles(int sampleSize, float left, float top, float right, float bottom, List<TileKey> tiles) {
+		tiles.clear();
+		left = Math.max(0, left);
+		top = Math.max(0, top);
+		right = Math.min(imageWidth, right);
+		bottom = Math.min(imageHeight, bottom);
+		if (right<=left || bottom<=top) return;
+
+		int size = sourceTileSize(sampleSize);
+		int firstColumn = (int)(left / size);
+		int lastColumn = Math.min(columnCount(sampleSize) - 1, (int)Math.ceil(right / size) - 1);
+		int firstRow = (int)(top / size);
+		int lastRow = Math.min(rowCount(sampleSize) - 1, (int)Math.ceil(bottom / size) - 1);
+		for(int row=firstRow; row<=lastRow; row++) {
+			for(int column=firstColumn; column<=lastColumn; column++) {
+				tiles.add(new TileKey(sampleSize, column, row));
+			}
+		}
+	}
+}
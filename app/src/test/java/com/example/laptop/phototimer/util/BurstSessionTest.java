@@ -0,0 +1,68 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BurstSessionTest {
+
+    static final long MS = 1000000L;
+
+    @Test
+    public void autofocusesOnlyFirstShotWhenLocked() {
+        BurstSession burst = new BurstSession(3, true);
+        assertTrue(burst.shouldAutoFocusBeforeNextShot());
+        burst.shotRequested(0);
+        assertFalse(burst.shouldAutoFocusBeforeNextShot());
+
+        BurstSession unlocked = new BurstSession(3, false);
+        unlocked.shotRequested(0);
+        assertTrue(unlocked.shouldAutoFocusBeforeNextShot());
+    }
+
+    @Test
+    public void recordsShutterLagAndIntervals() {
+        BurstSession burst = new BurstSession(3, true);
+        long[][] shots = {{0, 400, 900}, {950, 1050, 1500}, {1550, 1650, 2100}};
+        for(long[] shot : shots) {
+            assertTrue(burst.hasMoreShots());
+            burst.shotRequested(shot[0] * MS);
+            burst.shutterFired(shot[1] * MS);
+            burst.pictureReceived(shot[2] * MS);
+        }
+        assertFalse(burst.hasMoreShots());
+        assertTrue(burst.isComplete());
+
+        assertEquals(400 * MS, burst.shutterLagNanos(0));
+        assertEquals(100 * MS, burst.shutterLagNanos(1));
+        assertEquals(-1, burst.interShotIntervalNanos(0));
+        assertEquals(650 * MS, burst.interShotIntervalNanos(1));
+        assertEquals(600 * MS, burst.interShotIntervalNanos(2));
+        assertEquals(550 * MS, burst.captureLatencyNanos(2));
+        assertEquals(2100 * MS, burst.totalDurationNanos());
+        assertTrue(burst.summary().startsWith("Burst of 3"));
+    }
+
+    @Test
+    public void usesPictureTimeWhenShutterCallbackMissing() {
+        BurstSession burst = new BurstSession(2, false);
+        burst.shotRequested(0);
+        assertEquals(1, burst.pictureReceived(300 * MS));
+        burst.shotRequested(400 * MS);
+        assertEquals(2, burst.pictureReceived(800 * MS));
+
+        assertEquals(300 * MS, burst.shutterLagNanos(0));
+        assertEquals(500 * MS, burst.interShotIntervalNanos(1));
+    }
+
+    @Test
+    public void singleShotIsNotMultiShot() {
+        BurstSession burst = new BurstSession(1, true);
+        assertFalse(burst.isMultiShot());
+        burst.shotRequested(0);
+        assertFalse(burst.hasMoreShots());
+        assertFalse(burst.isComplete());
+        burst.pictureReceived(10);
+        assertTrue(burst.isComplete());
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CameraConfigCacheTest {
+
+    @Test
+    public void keepsOneConfigPerCamera() {
+        CameraConfigCache cache = new CameraConfigCache();
+        assertFalse(cache.hasConfig(1));
+        CameraConfigCache.Config front = cache.configForCamera(1);
+        assertSame(front, cache.configForCamera(1));
+        assertNotSame(front, cache.configForCamera(0));
+        assertEquals(1, front.cameraId);
+
+        cache.clear();
+        assertFalse(cache.hasConfig(1));
+    }
+
+    @Test
+    public void previewSizeIsTiedToRequestedSize() {
+        CameraConfigCache.Config config = new CameraConfigCache().configForCamera(0);
+        assertFalse(config.hasPreviewSizeFor(1280, 720));
+        config.setPreviewSize(1280, 720, 1280, 960);
+        assertTrue(config.hasPreviewSizeFor(1280, 720));
+        assertFalse(config.hasPreviewSizeFor(720, 1280));
+        assertEquals(1280, config.getPreviewWidth());
+        assertEquals(960, config.getPreviewHeight());
+    }
+
+    @Test
+    public void completeOnceEverythingIsNegotiated() {
+        CameraConfigCache.Config config = new CameraConfigCache().configForCamera(0);
+        assertNull(config.isRotated180());
+        assertNull(config.getFlashModes());
+
+        config.setPreviewSize(800, 480, 800, 480);
+        config.setPictureSize(4160, 3120);
+        config.setFlashModes(Arrays.asList("off", "on"));
+        assertFalse(config.isComplete());
+        config.setRotated180(false);
+        assertTrue(config.isComplete());
+        assertEquals(Boolean.FALSE, config.isRotated180());
+        assertEquals(3120, config.getPictureHeight());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CameraParametersCacheTest {
+
+    @Test
+    public void findsChangedAndAddedParameters() {
+        String before = "preview-size=640x480;rotation=0;flash-mode=off;picture-size=2048x1536";
+        String after = "preview-size=1280x720;rotation=180;flash-mode=off;picture-size=2048x1536;auto-exposure-lock=true";
+        Map<String, String> changed = CameraParametersCache.changedParameters(before, after);
+
+        assertEquals(Arrays.asList("preview-size", "rotation", "auto-exposure-lock"),
+                new ArrayList<String>(changed.keySet()));
+        assertEquals("1280x720", changed.get("preview-size"));
+        assertEquals("180", changed.get("rotation"));
+    }
+
+    @Test
+    public void keepsValuesContainingSeparators() {
+        Map<String, String> values = CameraParametersCache.parseFlattened("preview-fps-range=15000,30000;focus-areas=(0,0,0,0,0);bad");
+        assertEquals(2, values.size());
+        assertEquals("15000,30000", values.get("preview-fps-range"));
+        assertEquals("(0,0,0,0,0)", values.get("focus-areas"));
+    }
+
+    @Test
+    public void everythingChangedWithoutPreviousState() {
+        assertEquals(2, CameraParametersCache.changedParameters(null, "a=1;b=2").size());
+        assertTrue(CameraParametersCache.changedParameters("a=1;b=2", "a=1;b=2").isEmpty());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import static com.example.laptop.phototimer.util.CameraStartupMetrics.Stage;
+import static org.junit.Assert.*;
+
+public class CameraStartupMetricsTest {
+
+    static final long MS = 1000000L;
+
+    @Test
+    public void measuresStagesFromOpenRequest() {
+        CameraStartupMetrics metrics = new CameraStartupMetrics();
+        metrics.mark(Stage.OPEN_REQUESTED, 1000 * MS);
+        metrics.mark(Stage.CAMERA_OPENED, 1180 * MS);
+        metrics.mark(Stage.SURFACE_READY, 1120 * MS);
+        metrics.mark(Stage.FIRST_FRAME, 1400 * MS);
+
+        assertEquals(180 * MS, metrics.elapsedNanos(Stage.CAMERA_OPENED));
+        assertEquals(120 * MS, metrics.elapsedNanos(Stage.SURFACE_READY));
+        assertEquals(400 * MS, metrics.timeToFirstFrameNanos());
+        assertEquals(-1, metrics.elapsedNanos(Stage.CONFIGURED));
+        assertEquals("Camera startup: camera_opened +180.0ms surface_ready +120.0ms first_frame +400.0ms",
+                metrics.summary());
+    }
+
+    @Test
+    public void keepsFirstMarkUntilReset() {
+        CameraStartupMetrics metrics = new CameraStartupMetrics();
+        metrics.mark(Stage.OPEN_REQUESTED, 0);
+        metrics.mark(Stage.FIRST_FRAME, 300 * MS);
+        metrics.mark(Stage.FIRST_FRAME, 500 * MS);
+        assertEquals(300 * MS, metrics.timeToFirstFrameNanos());
+
+        metrics.reset();
+        assertFalse(metrics.isMarked(Stage.FIRST_FRAME));
+        assertEquals(-1, metrics.timeToFirstFrameNanos());
+        metrics.mark(Stage.OPEN_REQUESTED, 1000 * MS);
+        metrics.mark(Stage.FIRST_FRAME, 1250 * MS);
+        assertEquals(250 * MS, metrics.timeToFirstFrameNanos());
+    }
+
+    @Test
+    public void needsOpenRequestForElapsedTimes() {
+        CameraStartupMetrics metrics = new CameraStartupMetrics();
+        metrics.mark(Stage.PREVIEW_STARTED, 100 * MS);
+        assertTrue(metrics.isMarked(Stage.PREVIEW_STARTED));
+        assertEquals(-1, metrics.elapsedNanos(Stage.PREVIEW_STARTED));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DecodePlannerTest {
+
+    @Test
+    public void choosesLargestPowerOfTwoAboveMinimum() {
+        // 13 MP capture shown on a 1920x1080 screen
+        assertEquals(2, DecodePlanner.sampleSizeForMinimumSize(4160, 3120, 1920, 1080));
+        // library grid cell
+        assertEquals(32, DecodePlanner.sampleSizeForMinimumSize(4160, 3120, 92, 69));
+        assertEquals(4, DecodePlanner.sampleSizeForMinimumSize(4000, 3000, 1000, 750));
+        assertEquals(2, DecodePlanner.sampleSizeForMinimumSize(4000, 3000, 1001, 750));
+    }
+
+    @Test
+    public void decodedImageCoversRequestedSize() {
+        int[][] cases = {{4160, 3120, 1920, 1080}, {3264, 2448, 800, 480}, {2592, 1944, 92, 69}, {640, 480, 1920, 1080}};
+        for(int[] c : cases) {
+            int sample = DecodePlanner.sampleSizeForMinimumSize(c[0], c[1], c[2], c[3]);
+            assertEquals(0, sample & (sample - 1));
+            int w = DecodePlanner.sampledDimension(c[0], sample);
+            int h = DecodePlanner.sampledDimension(c[1], sample);
+            assertTrue(w >= Math.min(c[0], c[2]) && h >= Math.min(c[1], c[3]));
+            // the next power of two would be too small in at least one dimension
+            assertTrue(c[0] < c[2] * sample * 2 || c[1] < c[3] * sample * 2);
+        }
+    }
+
+    @Test
+    public void neverUpsamplesOrDividesByZero() {
+        assertEquals(1, DecodePlanner.sampleSizeForMinimumSize(640, 480, 1920, 1080));
+        assertEquals(1, DecodePlanner.sampleSizeForMinimumSize(0, 0, 100, 100));
+        assertEquals(1024, DecodePlanner.sampleSizeForMinimumSize(1024, 1024, 0, 0));
+    }
+
+    @Test
+    public void roundsSampledDimensionsUp() {
+        assertEquals(1300, DecodePlanner.sampledDimension(2599, 2));
+        assertEquals(130, DecodePlanner.sampledDimension(4160, 32));
+        assertEquals(98, DecodePlanner.sampledDimension(3120, 32));
+    }
+
+    @Test
+    public void usesSmallerConfigForThumbnails() {
+        assertTrue(DecodePlanner.isThumbnailTarget(92, 69));
+        assertFalse(DecodePlanner.isThumbnailTarget(1920, 1080));
+        assertEquals(130 * 98 * 2, DecodePlanner.decodedByteCount(4160, 3120, 32, true));
+        assertEquals(2080 * 1560 * 4, DecodePlanner.decodedByteCount(4160, 3120, 2, false));
+    }
+
+    @Test
+    public void decodeThreadsFollowCoreCount() {
+        assertEquals(4, DecodePlanner.decodeThreadCount(8, 4));
+        assertEquals(2, DecodePlanner.decodeThreadCount(2, 4));
+        assertEquals(1, DecodePlanner.decodeThreadCount(1, 4));
+        assertEquals(1, DecodePlanner.decodeThreadCount(0, 4));
+    }
+}
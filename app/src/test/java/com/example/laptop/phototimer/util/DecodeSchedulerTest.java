@@ -0,0 +1,155 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DecodeSchedulerTest {
+
+    /** Decoder whose first decode blocks until released, so later submissions stay queued. */
+    static class GatedDecoder implements DecodeScheduler.Decoder<String, String> {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> decoded = Collections.synchronizedList(new ArrayList<String>());
+
+        public String decode(String key) throws Exception {
+            firstStarted.countDown();
+            release.await();
+            decoded.add(key);
+            return key.toUpperCase();
+        }
+    }
+
+    static class RecordingCallback implements DecodeScheduler.Callback<String> {
+        CountDownLatch done = new CountDownLatch(1);
+        String value;
+
+        public void decodeCompleted(String value) {
+            this.value = value;
+            done.countDown();
+        }
+    }
+
+    DecodeScheduler<String, String> scheduler;
+
+    @After
+    public void shutdown() {
+        if (scheduler!=null) scheduler.shutdown();
+    }
+
+    @Test
+    public void decodesMostRecentRequestFirst() throws Exception {
+        GatedDecoder decoder = new GatedDecoder();
+        scheduler = new DecodeScheduler<String, String>(decoder, 1);
+        RecordingCallback blocker = new RecordingCallback();
+        scheduler.submit("blocker", blocker);
+        assertTrue(decoder.firstStarted.await(1, TimeUnit.SECONDS));
+
+        RecordingCallback first = new RecordingCallback();
+        scheduler.submit("a", first);
+        scheduler.submit("b", new RecordingCallback());
+        scheduler.submit("c", new RecordingCallback());
+        decoder.release.countDown();
+
+        assertTrue(first.done.await(1, TimeUnit.SECONDS));
+        assertEquals("blocker", decoder.decoded.get(0));
+        assertEquals("c", decoder.decoded.get(1));
+        assertEquals("b", decoder.decoded.get(2));
+        assertEquals("a", decoder.decoded.get(3));
+    }
+
+    @Test
+    public void sharesDecodeForDuplicateRequests() throws Exception {
+        GatedDecoder decoder = new GatedDecoder();
+        scheduler = new DecodeScheduler<String, String>(decoder, 1);
+        scheduler.submit("blocker", new RecordingCallback());
+        assertTrue(decoder.firstStarted.await(1, TimeUnit.SECONDS));
+
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        scheduler.submit("a", first);
+        scheduler.submit("a", second);
+        assertEquals(1, scheduler.queuedTaskCount());
+        decoder.release.countDown();
+
+        assertTrue(first.done.await(1, TimeUnit.SECONDS));
+        assertTrue(second.done.await(1, TimeUnit.SECONDS));
+        assertEquals("A", first.value);
+        assertEquals("A", second.value);
+        assertEquals(1, scheduler.getRequestsShared());
+        assertEquals(1, Collections.frequency(decoder.decoded, "a"));
+    }
+
+    @Test
+    public void cancellingQueuedRequestRemovesWork() throws Exception {
+        GatedDecoder decoder = new GatedDecoder();
+        scheduler = new DecodeScheduler<String, String>(decoder, 1);
+        scheduler.submit("blocker", new RecordingCallback());
+        assertTrue(decoder.firstStarted.await(1, TimeUnit.SECONDS));
+
+        RecordingCallback cancelled = new RecordingCallback();
+        DecodeScheduler<String, String>.Request request = scheduler.submit("a", cancelled);
+        RecordingCallback kept = new RecordingCallback();
+        scheduler.submit("b", kept);
+        assertEquals(2, scheduler.queuedTaskCount());
+
+        assertTrue(request.cancel());
+        assertFalse(request.cancel());
+        assertEquals(1, scheduler.queuedTaskCount());
+        decoder.release.countDown();
+
+        assertTrue(kept.done.await(1, TimeUnit.SECONDS));
+        assertFalse(cancelled.done.await(100, TimeUnit.MILLISECONDS));
+        assertFalse(decoder.decoded.contains("a"));
+        assertEquals(1, scheduler.getRequestsCancelled());
+    }
+
+    @Test
+    public void cancellingOneOfSharedRequestsKeepsDecode() throws Exception {
+        GatedDecoder decoder = new GatedDecoder();
+        scheduler = new DecodeScheduler<String, String>(decoder, 1);
+        scheduler.submit("blocker", new RecordingCallback());
+        assertTrue(decoder.firstStarted.await(1, TimeUnit.SECONDS));
+
+        DecodeScheduler<String, String>.Request request = scheduler.submit("a", new RecordingCallback());
+        RecordingCallback kept = new RecordingCallback();
+        scheduler.submit("a", kept);
+        request.cancel();
+        assertEquals(1, scheduler.queuedTaskCount());
+        decoder.release.countDown();
+
+        assertTrue(kept.done.await(1, TimeUnit.SECONDS));
+        assertEquals("A", kept.value);
+    }
+
+    @Test
+    public void staleTaskDoesNotRemoveNewerTaskForSameKey() throws Exception {
+        GatedDecoder decoder = new GatedDecoder();
+        scheduler = new DecodeScheduler<String, String>(decoder, 1);
+        scheduler.submit("blocker", new RecordingCallback());
+        assertTrue(decoder.firstStarted.await(1, TimeUnit.SECONDS));
+
+        DecodeScheduler<String, String>.Request cancelled = scheduler.submit("a", new RecordingCallback());
+        cancelled.cancel();
+        RecordingCallback first = new RecordingCallback();
+        scheduler.submit("a", first);
+        // the cancelled task runs anyway, as if a worker had taken it before it was removed
+        cancelled.task.run();
+
+        RecordingCallback second = new RecordingCallback();
+        scheduler.submit("a", second);
+        assertEquals(1, scheduler.getRequestsShared());
+        decoder.release.countDown();
+
+        assertTrue(second.done.await(1, TimeUnit.SECONDS));
+        assertEquals("A", first.value);
+        assertEquals(1, Collections.frequency(decoder.decoded, "a"));
+    }
+}
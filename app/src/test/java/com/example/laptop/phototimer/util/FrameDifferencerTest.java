@@ -0,0 +1,64 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FrameDifferencerTest {
+
+    static final int WIDTH = 64, HEIGHT = 48;
+
+    static byte[] frame(int background, int squareX, int squareY, int squareSize) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(frame, (byte)background);
+        for(int y=squareY; y<squareY+squareSize; y++) {
+            for(int x=squareX; x<squareX+squareSize; x++) {
+                frame[y * WIDTH + x] = (byte)255;
+            }
+        }
+        return frame;
+    }
+
+    @Test
+    public void firstFrameIsReference() {
+        FrameDifferencer differencer = new FrameDifferencer(4, 20);
+        assertEquals(-1f, differencer.changedFraction(frame(100, 0, 0, 0), WIDTH, HEIGHT), 0);
+        assertEquals(0f, differencer.changedFraction(frame(100, 0, 0, 0), WIDTH, HEIGHT), 0);
+        differencer.reset();
+        assertEquals(-1f, differencer.changedFraction(frame(100, 0, 0, 0), WIDTH, HEIGHT), 0);
+    }
+
+    @Test
+    public void measuresChangedArea() {
+        FrameDifferencer differencer = new FrameDifferencer(4, 20);
+        differencer.setCompensateBrightness(false);
+        differencer.changedFraction(frame(100, 0, 0, 0), WIDTH, HEIGHT);
+        // a 16x16 square covers 4x4 of the 16x12 decimated pixels
+        assertEquals(16f / (16 * 12), differencer.changedFraction(frame(100, 16, 16, 16), WIDTH, HEIGHT), 1e-6);
+        // moving it changes both the old and the new position
+        assertEquals(32f / (16 * 12), differencer.changedFraction(frame(100, 40, 16, 16), WIDTH, HEIGHT), 1e-6);
+    }
+
+    @Test
+    public void compensatesUniformBrightnessChange() {
+        FrameDifferencer differencer = new FrameDifferencer(4, 20);
+        differencer.changedFraction(frame(100, 0, 0, 0), WIDTH, HEIGHT);
+        assertEquals(0f, differencer.changedFraction(frame(140, 0, 0, 0), WIDTH, HEIGHT), 0);
+
+        differencer.setCompensateBrightness(false);
+        assertEquals(1f, differencer.changedFraction(frame(100, 0, 0, 0), WIDTH, HEIGHT), 0);
+    }
+
+    @Test
+    public void reusesBuffers() {
+        FrameDifferencer differencer = new FrameDifferencer(2, 20);
+        byte[] a = frame(100, 0, 0, 0), b = frame(100, 8, 8, 8);
+        for(int i=0; i<50; i++) {
+            differencer.changedFraction((i % 2 == 0) ? a : b, WIDTH, HEIGHT);
+        }
+        // two frame arrays plus the decimator's row sums
+        assertEquals(3, differencer.getBuffersAllocated());
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+public class FrameRateManagerTest {
+
+    static final long MILLION = 1000000L;
+
+    @Test
+    public void computesFpsFromHistory() {
+        FrameRateManager manager = new FrameRateManager(30);
+        long t = 0;
+        for(int i=0; i<50; i++) {
+            manager.frameStarted(t);
+            t += 33333333;
+        }
+        assertEquals(30.0, manager.currentFramesPerSecond(), 0.01);
+        assertEquals(t - 33333333, manager.lastFrameStartTime());
+        assertEquals(50, manager.getTotalFrames());
+    }
+
+    @Test
+    public void reportsPercentilesAndJank() {
+        FrameRateManager manager = new FrameRateManager(30);
+        manager.setStatsWindowSize(100);
+        long t = 0;
+        manager.frameStarted(t);
+        for(int i=1; i<=100; i++) {
+            // 95 regular frames at 20ms, then 5 long ones
+            t += (i <= 95) ? 20*MILLION : 100*MILLION;
+            manager.frameStarted(t);
+        }
+        FrameTimeStats stats = manager.getFrameTimeStats();
+        assertEquals(100, stats.getCount());
+        assertEquals(20*MILLION, stats.percentileNanos(50));
+        assertEquals(20*MILLION, stats.percentileNanos(95));
+        assertEquals(100*MILLION, stats.percentileNanos(99));
+        assertEquals(5, manager.jankCount());
+        manager.setJankThresholdNanos(10*MILLION);
+        assertEquals(100, manager.jankCount());
+    }
+
+    @Test
+    public void statsWindowRolls() {
+        FrameTimeStats stats = new FrameTimeStats(4);
+        for(long interval : new long[] {50, 10, 20, 30, 40}) {
+            stats.recordInterval(interval);
+        }
+        assertEquals(4, stats.getCount());
+        assertEquals(10, stats.percentileNanos(0));
+        assertEquals(40, stats.percentileNanos(100));
+        assertEquals(25, stats.meanNanos());
+    }
+
+    @Test
+    public void percentileRateReductionIgnoresMeanWhenTailIsSlow() {
+        // mean stays above 20fps but one frame in ten takes 100ms
+        FrameRateManager meanManager = new FrameRateManager(new double[] {30, 15}, new double[] {20});
+        FrameRateManager tailManager = new FrameRateManager(new double[] {30, 15}, new double[] {20});
+        tailManager.setRateReductionPercentile(95);
+        long t = 0;
+        for(int i=0; i<400; i++) {
+            t += (i % 10 == 9) ? 100*MILLION : 30*MILLION;
+            meanManager.frameStarted(t);
+            tailManager.frameStarted(t);
+        }
+        assertEquals(30, meanManager.targetFramesPerSecond(), 0.001);
+        assertEquals(15, tailManager.targetFramesPerSecond(), 0.001);
+    }
+
+    @Test
+    public void waitsUntilNextFrameSlot() {
+        FrameRateManager manager = new FrameRateManager(new double[] {10}, new double[0]);
+        manager.frameStarted(0);
+        long expected = (long)(1000000000L / (10 * 1.015));
+        assertEquals(expected, manager.nanosToWaitUntilNextFrame(0));
+        assertEquals(MILLION, manager.nanosToWaitUntilNextFrame(expected + 5*MILLION));
+    }
+
+    @Test
+    public void steadyStateFramesDoNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+
+        FrameRateManager manager = new FrameRateManager(new double[] {30, 15}, new double[] {20});
+        manager.setRateReductionPercentile(95);
+        long t = 0;
+        for(int i=0; i<20000; i++) {
+            t += 33*MILLION + (i % 7) * MILLION;
+            manager.frameStarted(t);
+            manager.jankCount();
+        }
+
+        long measurementOverhead = threadBean.getThreadAllocatedBytes(threadId);
+        measurementOverhead = threadBean.getThreadAllocatedBytes(threadId) - measurementOverhead;
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for(int i=0; i<10000; i++) {
+            t += 33*MILLION + (i % 7) * MILLION;
+            manager.frameStarted(t);
+            manager.jankCount();
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before - measurementOverhead;
+        assertEquals(0, allocated);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.laptop.phototimer.util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares allocation per frame of the legacy grayscale conversion (a fresh int array sized to
+ * the whole NV21 buffer) against GrayscaleConverter. Run the main method on a HotSpot JVM;
+ * allocation figures come from com.sun.management.ThreadMXBean.
+ */
+public class GrayscaleConverterBenchmark {
+
+    static final int WARMUP_FRAMES = 200;
+    static final int MEASURED_FRAMES = 300;
+
+    static int[] legacyConvert(byte[] cdata) {
+        int[] pixels = new int[cdata.length];
+        for(int i=0; i<cdata.length; i++) {
+            int g = 0xff & cdata[i];
+            pixels[i] = (255<<24) + (g<<16) + (g<<8) + g;
+        }
+        return pixels;
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) {
+        int[][] sizes = {{640, 480}, {1280, 720}, {1920, 1080}};
+        for(int[] size : sizes) {
+            int width = size[0], height = size[1];
+            byte[] frame = new byte[width * height * 3 / 2];
+            GrayscaleConverter converter = new GrayscaleConverter();
+            long sink = 0;
+
+            for(int i=0; i<WARMUP_FRAMES; i++) {
+                sink += legacyConvert(frame)[i];
+                sink += converter.convertLuma(frame, width, height)[i];
+            }
+
+            long start = allocatedBytes();
+            long t0 = System.nanoTime();
+            for(int i=0; i<MEASURED_FRAMES; i++) {
+                sink += legacyConvert(frame)[i];
+            }
+            long legacyNanos = System.nanoTime() - t0;
+            long legacyBytes = allocatedBytes() - start;
+
+            start = allocatedBytes();
+            t0 = System.nanoTime();
+            for(int i=0; i<MEASURED_FRAMES; i++) {
+                sink += converter.convertLuma(frame, width, height)[i];
+            }
+            long pooledNanos = System.nanoTime() - t0;
+            long pooledBytes = allocatedBytes() - start;
+
+            System.out.println(String.format("%dx%d legacy: %d bytes/frame %.3f ms/frame | pooled: %d bytes/frame %.3f ms/frame (%d)",
+                    width, height, legacyBytes / MEASURED_FRAMES, legacyNanos / 1e6 / MEASURED_FRAMES,
+                    pooledBytes / MEASURED_FRAMES, pooledNanos / 1e6 / MEASURED_FRAMES, sink));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GrayscaleConverterTest {
+
+    static byte[] nv21Frame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        for(int i=0; i<frame.length; i++) {
+            frame[i] = (byte)(i * 7);
+        }
+        return frame;
+    }
+
+    @Test
+    public void convertsOnlyLumaPlane() {
+        int width = 8, height = 4;
+        byte[] frame = nv21Frame(width, height);
+        int[] pixels = new GrayscaleConverter().convertLuma(frame, width, height);
+
+        assertTrue(pixels.length >= width * height);
+        for(int i=0; i<width*height; i++) {
+            int g = 0xff & frame[i];
+            assertEquals(0xff000000 | (g<<16) | (g<<8) | g, pixels[i]);
+        }
+    }
+
+    @Test
+    public void reusesBufferForSamePreviewSize() {
+        GrayscaleConverter converter = new GrayscaleConverter();
+        byte[] frame = nv21Frame(64, 48);
+        int[] first = converter.convertLuma(frame, 64, 48);
+        for(int i=0; i<100; i++) {
+            assertSame(first, converter.convertLuma(frame, 64, 48));
+        }
+        assertEquals(1, converter.getBuffersAllocated());
+    }
+
+    @Test
+    public void reallocatesOnlyWhenPreviewSizeGrows() {
+        GrayscaleConverter converter = new GrayscaleConverter();
+        converter.convertLuma(nv21Frame(64, 48), 64, 48);
+        converter.convertLuma(nv21Frame(32, 24), 32, 24);
+        assertEquals(1, converter.getBuffersAllocated());
+        converter.convertLuma(nv21Frame(128, 96), 128, 96);
+        assertEquals(2, converter.getBuffersAllocated());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortFrame() {
+        new GrayscaleConverter().convertLuma(new byte[10], 8, 4);
+    }
+}
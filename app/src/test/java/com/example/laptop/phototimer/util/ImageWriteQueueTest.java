@@ -0,0 +1,126 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class ImageWriteQueueTest {
+
+    static final Executor DIRECT_EXECUTOR = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    static class RecordingCallback implements ImageWriteQueue.WriteCallback {
+        List<File> completed = Collections.synchronizedList(new ArrayList<File>());
+        List<File> failed = Collections.synchronizedList(new ArrayList<File>());
+
+        public void writeCompleted(File file, long writeNanos) {
+            completed.add(file);
+        }
+
+        public void writeFailed(File file, Exception ex) {
+            failed.add(file);
+        }
+    }
+
+    File dir;
+    ImageWriteQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("writequeue", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        queue.shutdown();
+        File[] files = dir.listFiles();
+        if (files!=null) {
+            for(File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int)file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                offset += in.read(data, offset, data.length - offset);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return data;
+    }
+
+    @Test
+    public void writesFilesInOrderAndReportsCompletion() throws Exception {
+        queue = new ImageWriteQueue(ImageWriteQueue.FsyncPolicy.EACH_FILE, DIRECT_EXECUTOR);
+        RecordingCallback callback = new RecordingCallback();
+        for(int i=1; i<=4; i++) {
+            byte[] data = new byte[1000 * i];
+            data[0] = (byte)i;
+            queue.enqueue(data, new File(dir, "IMG-" + i + ".jpg"), callback);
+        }
+        assertTrue(queue.awaitIdle(2000));
+        assertEquals(0, queue.getPendingWriteCount());
+
+        assertEquals(4, callback.completed.size());
+        for(int i=1; i<=4; i++) {
+            File file = callback.completed.get(i - 1);
+            assertEquals("IMG-" + i + ".jpg", file.getName());
+            byte[] data = readFile(file);
+            assertEquals(1000 * i, data.length);
+            assertEquals(i, data[0]);
+        }
+        assertTrue(callback.failed.isEmpty());
+    }
+
+    @Test
+    public void reportsFailureWhenDirectoryCannotBeCreated() throws Exception {
+        queue = new ImageWriteQueue(ImageWriteQueue.FsyncPolicy.NONE, DIRECT_EXECUTOR);
+        dir.getParentFile().mkdirs();
+        // a plain file where the directory should be
+        assertTrue(dir.createNewFile());
+        RecordingCallback callback = new RecordingCallback();
+        queue.enqueue(new byte[10], new File(dir, "IMG.jpg"), callback);
+        assertTrue(queue.awaitIdle(2000));
+
+        assertEquals(1, callback.failed.size());
+        assertTrue(callback.completed.isEmpty());
+    }
+
+    @Test
+    public void deliversCallbacksThroughExecutor() throws Exception {
+        final List<Runnable> posted = Collections.synchronizedList(new ArrayList<Runnable>());
+        queue = new ImageWriteQueue(ImageWriteQueue.FsyncPolicy.NONE, new Executor() {
+            public void execute(Runnable command) {
+                posted.add(command);
+            }
+        });
+        RecordingCallback callback = new RecordingCallback();
+        queue.enqueue(new byte[10], new File(dir, "IMG.jpg"), callback);
+        assertTrue(queue.awaitIdle(2000));
+
+        assertTrue(callback.completed.isEmpty());
+        assertEquals(1, posted.size());
+        posted.get(0).run();
+        assertEquals(1, callback.completed.size());
+    }
+}
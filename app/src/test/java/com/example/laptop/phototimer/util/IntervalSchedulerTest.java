@@ -0,0 +1,105 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IntervalSchedulerTest {
+
+    static final long MS = 1000000L;
+
+    static class FakeClock implements IntervalScheduler.Clock {
+        long now = 0;
+
+        public long nanoTime() {
+            return now;
+        }
+    }
+
+    @Test
+    public void delaysAreMeasuredFromThePlanNotTheLastTick() {
+        FakeClock clock = new FakeClock();
+        clock.now = 5000 * MS;
+        IntervalScheduler scheduler = new IntervalScheduler(clock, 1000 * MS, 1000 * MS, 3);
+        scheduler.start();
+        assertEquals(1000, scheduler.millisUntilNextFrame());
+
+        // each tick runs 30ms late; the next delay shrinks to compensate
+        clock.now += 1030 * MS;
+        assertTrue(scheduler.isFrameDue());
+        assertEquals(0, scheduler.startFrame());
+        assertEquals(970, scheduler.millisUntilNextFrame());
+
+        clock.now += 1000 * MS;
+        assertEquals(1, scheduler.startFrame());
+        assertEquals(30 * MS, scheduler.startLatenessNanos(1));
+        assertEquals(970, scheduler.millisUntilNextFrame());
+        assertEquals(7000 * MS, scheduler.plannedTimeNanos(1));
+    }
+
+    @Test
+    public void roundsPartialMillisecondsUp() {
+        FakeClock clock = new FakeClock();
+        IntervalScheduler scheduler = new IntervalScheduler(clock, 0, 1000 * MS, 2);
+        scheduler.start();
+        scheduler.startFrame();
+        clock.now = 1;
+        assertEquals(1000, scheduler.millisUntilNextFrame());
+        assertFalse(scheduler.isFrameDue());
+    }
+
+    @Test
+    public void skipsFramesWhoseSlotHasPassed() {
+        FakeClock clock = new FakeClock();
+        IntervalScheduler scheduler = new IntervalScheduler(clock, 0, 100 * MS, 5);
+        scheduler.setSkipMissedFrames(true);
+        scheduler.start();
+        assertEquals(0, scheduler.startFrame());
+
+        clock.now = 350 * MS;
+        assertEquals(3, scheduler.startFrame());
+        assertEquals(2, scheduler.getFramesSkipped());
+        assertEquals(50 * MS, scheduler.startLatenessNanos(3));
+
+        scheduler.skipFrame();
+        assertTrue(scheduler.isFinished());
+        assertEquals(3, scheduler.getFramesSkipped());
+        assertEquals(-1, scheduler.startFrame());
+        assertEquals(-1, scheduler.nanosUntilNextFrame());
+    }
+
+    @Test
+    public void takesLateFramesWhenNotSkipping() {
+        FakeClock clock = new FakeClock();
+        IntervalScheduler scheduler = new IntervalScheduler(clock, 0, 100 * MS, 3);
+        scheduler.start();
+        scheduler.startFrame();
+        clock.now = 350 * MS;
+        assertEquals(1, scheduler.startFrame());
+        assertEquals(0, scheduler.getFramesSkipped());
+        assertEquals(0, scheduler.millisUntilNextFrame());
+    }
+
+    @Test
+    public void reportsCaptureLatenessAndJitter() {
+        FakeClock clock = new FakeClock();
+        IntervalScheduler scheduler = new IntervalScheduler(clock, 0, 1000 * MS, 4);
+        scheduler.start();
+        long[] lateness = {100, 300, 100, 300};
+        for(int i=0; i<lateness.length; i++) {
+            clock.now = scheduler.plannedTimeNanos(i);
+            int frame = scheduler.startFrame();
+            scheduler.frameCaptured(frame, scheduler.plannedTimeNanos(frame) + lateness[i] * MS);
+        }
+        assertEquals(4, scheduler.getFramesCaptured());
+        assertEquals(200 * MS, scheduler.meanCaptureLatenessNanos());
+        assertEquals(300 * MS, scheduler.maxCaptureLatenessNanos());
+        assertEquals(100 * MS, scheduler.captureJitterNanos());
+        assertTrue(scheduler.summary().startsWith("4/4 frames captured, 0 skipped"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void rejectsEmptySchedule() {
+        new IntervalScheduler(0, 1000 * MS, 0);
+    }
+}
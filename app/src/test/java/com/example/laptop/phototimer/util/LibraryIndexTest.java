@@ -0,0 +1,143 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LibraryIndexTest {
+
+    File dir;
+    File thumbnailDir;
+    File indexFile;
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = File.createTempFile("library", "");
+        dir.delete();
+        thumbnailDir = new File(dir, "thumbnails");
+        thumbnailDir.mkdirs();
+        indexFile = new File(thumbnailDir, ".libraryindex");
+    }
+
+    @After
+    public void deleteDirectory() {
+        for(File f : thumbnailDir.listFiles()) f.delete();
+        thumbnailDir.delete();
+        for(File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    void writeFile(File file, int size) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[size]);
+        out.close();
+    }
+
+    LibraryIndex newIndex() {
+        return new LibraryIndex(dir, indexFile, thumbnailDir);
+    }
+
+    @Test
+    public void indexesJpegsNewestFirst() throws Exception {
+        writeFile(new File(dir, "IMG_20180102_101500.jpg"), 10);
+        writeFile(new File(dir, "IMG_20180103_080000-1.jpg"), 20);
+        writeFile(new File(dir, "IMG_20180101_000000.jpg"), 30);
+        writeFile(new File(dir, "notes.txt"), 5);
+        writeFile(new File(thumbnailDir, "IMG_20180101_000000.jpg"), 1);
+
+        LibraryIndex index = newIndex();
+        assertTrue(index.refresh());
+        List<LibraryIndex.Entry> entries = index.entries();
+        assertEquals(3, entries.size());
+        assertEquals("IMG_20180103_080000-1.jpg", entries.get(0).filename);
+        assertEquals("IMG_20180102_101500.jpg", entries.get(1).filename);
+        assertEquals("IMG_20180101_000000.jpg", entries.get(2).filename);
+        assertEquals(20, entries.get(0).size);
+        assertEquals(new SimpleDateFormat("yyyyMMdd_HHmmss").parse("20180102_101500").getTime(), entries.get(1).timestamp);
+        assertTrue(entries.get(2).thumbnailCached);
+        assertFalse(entries.get(0).thumbnailCached);
+    }
+
+    @Test
+    public void reloadsWithoutListingUnchangedDirectory() throws Exception {
+        writeFile(new File(dir, "IMG_20180102_101500.jpg"), 10);
+        dir.setLastModified(System.currentTimeMillis() - 60000);
+        assertTrue(newIndex().refresh());
+
+        LibraryIndex reloaded = newIndex();
+        reloaded.load();
+        assertEquals(1, reloaded.size());
+        assertFalse(reloaded.refresh());
+    }
+
+    @Test
+    public void picksUpAddedAndDeletedFiles() throws Exception {
+        File first = new File(dir, "IMG_20180102_101500.jpg");
+        writeFile(first, 10);
+        dir.setLastModified(System.currentTimeMillis() - 60000);
+        LibraryIndex index = newIndex();
+        index.refresh();
+        List<LibraryIndex.Entry> before = index.entries();
+
+        writeFile(new File(dir, "IMG_20180105_101500.jpg"), 10);
+        first.delete();
+        dir.setLastModified(System.currentTimeMillis() - 30000);
+        assertTrue(index.refresh());
+        assertEquals(1, index.size());
+        assertEquals("IMG_20180105_101500.jpg", index.entries().get(0).filename);
+        // earlier snapshots are not modified
+        assertEquals(1, before.size());
+        assertEquals("IMG_20180102_101500.jpg", before.get(0).filename);
+    }
+
+    @Test
+    public void recentDirectoryChangeIsRescanned() throws Exception {
+        writeFile(new File(dir, "IMG_20180102_101500.jpg"), 10);
+        LibraryIndex index = newIndex();
+        index.refresh();
+        // directory was modified within the mtime slack, so it is not trusted yet
+        writeFile(new File(dir, "IMG_20180102_101501.jpg"), 10);
+        assertTrue(index.refresh());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void removePersists() throws Exception {
+        writeFile(new File(dir, "IMG_20180102_101500.jpg"), 10);
+        writeFile(new File(dir, "IMG_20180103_101500.jpg"), 10);
+        LibraryIndex index = newIndex();
+        index.refresh();
+        index.remove("IMG_20180103_101500.jpg");
+        assertEquals(1, index.size());
+        index.save();
+
+        LibraryIndex reloaded = newIndex();
+        reloaded.load();
+        assertEquals(1, reloaded.size());
+        assertEquals("IMG_20180102_101500.jpg", reloaded.entries().get(0).filename);
+    }
+
+    @Test
+    public void markedThumbnailPersists() throws Exception {
+        writeFile(new File(dir, "IMG_20180102_101500.jpg"), 10);
+        LibraryIndex index = newIndex();
+        index.refresh();
+        assertFalse(index.entries().get(0).thumbnailCached);
+        assertTrue(index.markThumbnailCached("IMG_20180102_101500.jpg"));
+        assertFalse(index.markThumbnailCached("IMG_20180102_101500.jpg"));
+        assertFalse(index.markThumbnailCached("IMG_20180103_101500.jpg"));
+        index.save();
+
+        LibraryIndex reloaded = newIndex();
+        reloaded.load();
+        assertTrue(reloaded.entries().get(0).thumbnailCached);
+    }
+}
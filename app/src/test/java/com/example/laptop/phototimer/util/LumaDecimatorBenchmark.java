@@ -0,0 +1,67 @@
+package com.example.laptop.phototimer.util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times LumaDecimator at common preview sizes against a single pass over the full-resolution luma
+ * plane, and checks that steady-state decimation doesn't allocate. Run the main method on a HotSpot
+ * JVM; allocation figures come from com.sun.management.ThreadMXBean.
+ */
+public class LumaDecimatorBenchmark {
+
+    static final int WARMUP_FRAMES = 200;
+    static final int MEASURED_FRAMES = 300;
+
+    // stands in for per-frame analysis on the full plane: one read of every luma byte
+    static long fullPlanePass(byte[] cdata, int npixels) {
+        long sum = 0;
+        for(int i=0; i<npixels; i++) {
+            sum += 0xff & cdata[i];
+        }
+        return sum;
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) {
+        int[][] sizes = {{640, 480}, {1280, 720}, {1920, 1080}};
+        for(int[] size : sizes) {
+            int width = size[0], height = size[1];
+            byte[] frame = new byte[width * height * 3 / 2];
+            for(int i=0; i<frame.length; i++) {
+                frame[i] = (byte)(i * 31);
+            }
+            long sink = 0;
+
+            for(int i=0; i<WARMUP_FRAMES; i++) {
+                sink += fullPlanePass(frame, width * height);
+            }
+            long t0 = System.nanoTime();
+            for(int i=0; i<MEASURED_FRAMES; i++) {
+                sink += fullPlanePass(frame, width * height);
+            }
+            double fullMillis = (System.nanoTime() - t0) / 1e6 / MEASURED_FRAMES;
+            StringBuilder line = new StringBuilder(String.format("%dx%d full pass %.3f ms", width, height, fullMillis));
+
+            for(int factor : new int[] {2, 4, 8}) {
+                LumaDecimator decimator = new LumaDecimator(factor);
+                for(int i=0; i<WARMUP_FRAMES; i++) {
+                    sink += decimator.decimate(frame, width, height)[i];
+                }
+                long start = allocatedBytes();
+                t0 = System.nanoTime();
+                for(int i=0; i<MEASURED_FRAMES; i++) {
+                    sink += decimator.decimate(frame, width, height)[i];
+                }
+                double millis = (System.nanoTime() - t0) / 1e6 / MEASURED_FRAMES;
+                long bytes = allocatedBytes() - start;
+                line.append(String.format(" | 1/%d: %.3f ms, %d bytes/frame, %dx%d out", factor, millis,
+                        bytes / MEASURED_FRAMES, decimator.getOutputWidth(), decimator.getOutputHeight()));
+            }
+            System.out.println(line + " (" + sink + ")");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LumaDecimatorTest {
+
+    static byte[] nv21Frame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        for(int i=0; i<frame.length; i++) {
+            frame[i] = (byte)(i * 7);
+        }
+        return frame;
+    }
+
+    static int expectedAverage(byte[] frame, int width, int factor, int ox, int oy) {
+        int sum = 0;
+        for(int y=0; y<factor; y++) {
+            for(int x=0; x<factor; x++) {
+                sum += 0xff & frame[(oy * factor + y) * width + ox * factor + x];
+            }
+        }
+        return (sum + factor * factor / 2) / (factor * factor);
+    }
+
+    @Test
+    public void averagesEachBlock() {
+        int width = 40, height = 24;
+        byte[] frame = nv21Frame(width, height);
+        for(int factor : new int[] {2, 4, 8}) {
+            LumaDecimator decimator = new LumaDecimator(factor);
+            byte[] output = decimator.decimate(frame, width, height);
+            assertEquals(width / factor, decimator.getOutputWidth());
+            assertEquals(height / factor, decimator.getOutputHeight());
+            for(int oy=0; oy<height/factor; oy++) {
+                for(int ox=0; ox<width/factor; ox++) {
+                    assertEquals(expectedAverage(frame, width, factor, ox, oy),
+                            0xff & output[oy * (width / factor) + ox]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dropsPartialEdgeBlocks() {
+        int width = 10, height = 7;
+        byte[] frame = new byte[width * height];
+        for(int i=0; i<frame.length; i++) {
+            // the last column and row are bright and must not leak into the output
+            boolean edge = (i % width == 8 || i % width == 9 || i / width == 6);
+            frame[i] = (byte)(edge ? 255 : 10);
+        }
+        LumaDecimator decimator = new LumaDecimator(4);
+        byte[] output = decimator.decimate(frame, width, height);
+        assertEquals(2, decimator.getOutputWidth());
+        assertEquals(1, decimator.getOutputHeight());
+        assertEquals(10, output[0]);
+        assertEquals(10, output[1]);
+    }
+
+    @Test
+    public void keepsFullWhite() {
+        byte[] frame = new byte[16 * 16];
+        java.util.Arrays.fill(frame, (byte)255);
+        byte[] output = new LumaDecimator(8).decimate(frame, 16, 16);
+        assertEquals(255, 0xff & output[0]);
+    }
+
+    @Test
+    public void reusesBuffersForSameSize() {
+        LumaDecimator decimator = new LumaDecimator(4);
+        byte[] frame = nv21Frame(64, 48);
+        byte[] first = decimator.decimate(frame, 64, 48);
+        for(int i=0; i<100; i++) {
+            assertSame(first, decimator.decimate(frame, 64, 48));
+        }
+        assertEquals(2, decimator.getBuffersAllocated());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void rejectsUnsupportedFactor() {
+        new LumaDecimator(3);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void rejectsShortFrame() {
+        new LumaDecimator(2).decimate(new byte[10], 8, 8);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void rejectsSmallOutputArray() {
+        new LumaDecimator(2).decimate(new byte[64], 8, 8, new byte[15]);
+    }
+}
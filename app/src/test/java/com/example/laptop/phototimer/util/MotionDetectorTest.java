@@ -0,0 +1,117 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MotionDetectorTest {
+
+    static final int WIDTH = 64, HEIGHT = 48;
+
+    static class RecordingListener implements MotionDetector.Listener {
+        List<Float> detections = new ArrayList<Float>();
+
+        public void motionDetected(float changedFraction) {
+            detections.add(changedFraction);
+        }
+    }
+
+    static byte[] still() {
+        return FrameDifferencerTest.frame(100, 0, 0, 0);
+    }
+
+    static byte[] squareAt(int x) {
+        return FrameDifferencerTest.frame(100, x, 16, 16);
+    }
+
+    @Test
+    public void ignoresFramesUntilArmed() {
+        RecordingListener listener = new RecordingListener();
+        MotionDetector detector = new MotionDetector(listener);
+        for(int i=0; i<10; i++) {
+            detector.processFrame(squareAt(i * 4), WIDTH, HEIGHT);
+        }
+        assertTrue(listener.detections.isEmpty());
+        assertEquals(0, detector.getFramesAnalyzed());
+    }
+
+    @Test
+    public void firesOnceAfterConsecutiveMotionFrames() {
+        RecordingListener listener = new RecordingListener();
+        MotionDetector detector = new MotionDetector(listener);
+        detector.setWarmupFrames(2);
+        detector.setConsecutiveFrames(2);
+        detector.arm();
+
+        // motion during warm-up doesn't count
+        detector.processFrame(still(), WIDTH, HEIGHT);
+        detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+        detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+        assertTrue(listener.detections.isEmpty());
+
+        detector.processFrame(squareAt(16), WIDTH, HEIGHT);
+        assertTrue(listener.detections.isEmpty());
+        detector.processFrame(squareAt(32), WIDTH, HEIGHT);
+        assertEquals(1, listener.detections.size());
+        assertTrue(listener.detections.get(0) >= MotionDetector.DEFAULT_AREA_THRESHOLD);
+        assertFalse(detector.isArmed());
+
+        detector.processFrame(squareAt(48), WIDTH, HEIGHT);
+        assertEquals(1, listener.detections.size());
+    }
+
+    @Test
+    public void firesAgainEachTimeItIsRearmed() {
+        RecordingListener listener = new RecordingListener();
+        MotionDetector detector = new MotionDetector(listener);
+        detector.setWarmupFrames(0);
+        detector.setConsecutiveFrames(1);
+        // the activity re-arms after each triggered capture, so one session can take several pictures
+        for(int trigger=1; trigger<=3; trigger++) {
+            detector.arm();
+            detector.processFrame(still(), WIDTH, HEIGHT);
+            detector.processFrame(squareAt(16), WIDTH, HEIGHT);
+            assertEquals(trigger, listener.detections.size());
+            assertFalse(detector.isArmed());
+            detector.processFrame(still(), WIDTH, HEIGHT);
+            assertEquals(trigger, listener.detections.size());
+        }
+    }
+
+    @Test
+    public void stillFramesResetMotionCount() {
+        RecordingListener listener = new RecordingListener();
+        MotionDetector detector = new MotionDetector(listener);
+        detector.setWarmupFrames(0);
+        detector.setConsecutiveFrames(2);
+        detector.arm();
+        detector.processFrame(still(), WIDTH, HEIGHT);
+        // the square appearing and disappearing are each a single frame of change
+        for(int i=0; i<5; i++) {
+            detector.processFrame(squareAt(16), WIDTH, HEIGHT);
+            detector.processFrame(squareAt(16), WIDTH, HEIGHT);
+            detector.processFrame(still(), WIDTH, HEIGHT);
+            detector.processFrame(still(), WIDTH, HEIGHT);
+        }
+        assertTrue(listener.detections.isEmpty());
+        assertTrue(detector.isArmed());
+        assertEquals(21, detector.getFramesAnalyzed());
+        assertTrue(detector.processingTimePercentileNanos(50) >= 0);
+    }
+
+    @Test
+    public void smallChangesStayBelowAreaThreshold() {
+        RecordingListener listener = new RecordingListener();
+        MotionDetector detector = new MotionDetector(listener);
+        detector.setWarmupFrames(0);
+        detector.setConsecutiveFrames(1);
+        detector.setAreaThreshold(0.5f);
+        detector.arm();
+        detector.processFrame(still(), WIDTH, HEIGHT);
+        detector.processFrame(squareAt(16), WIDTH, HEIGHT);
+        assertTrue(listener.detections.isEmpty());
+    }
+}
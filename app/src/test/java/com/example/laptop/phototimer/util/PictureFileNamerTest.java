@@ -0,0 +1,58 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class PictureFileNamerTest {
+
+    File dir;
+    Date time;
+
+    @Before
+    public void createDirectory() throws Exception {
+        dir = File.createTempFile("pictures", "");
+        dir.delete();
+        dir.mkdirs();
+        time = new SimpleDateFormat("yyyyMMdd_HHmmss").parse("20180102_101500");
+    }
+
+    @After
+    public void deleteDirectory() {
+        for(File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void twoPicturesInTheSameSecondGetDifferentNames() {
+        PictureFileNamer namer = new PictureFileNamer(dir);
+        // neither file exists yet, as both writes may still be queued
+        assertEquals("IMG_20180102_101500.jpg", namer.fileForPicture(time, 0).getName());
+        assertEquals("IMG_20180102_101500-2.jpg", namer.fileForPicture(new Date(time.getTime() + 400), 0).getName());
+        assertEquals("IMG_20180102_101500-3.jpg", namer.fileForPicture(new Date(time.getTime() + 800), 0).getName());
+        assertEquals("IMG_20180102_101501.jpg", namer.fileForPicture(new Date(time.getTime() + 1000), 0).getName());
+    }
+
+    @Test
+    public void burstShotsKeepTheirNumbers() {
+        PictureFileNamer namer = new PictureFileNamer(dir);
+        assertEquals("IMG_20180102_101500-1.jpg", namer.fileForPicture(time, 1).getName());
+        assertEquals("IMG_20180102_101500-2.jpg", namer.fileForPicture(time, 2).getName());
+        assertEquals("IMG_20180102_101500-1-2.jpg", namer.fileForPicture(time, 1).getName());
+    }
+
+    @Test
+    public void skipsExistingFiles() throws IOException {
+        assertTrue(new File(dir, "IMG_20180102_101500.jpg").createNewFile());
+        assertTrue(new File(dir, "IMG_20180102_101500-2.jpg").createNewFile());
+        File file = new PictureFileNamer(dir).fileForPicture(time, 0);
+        assertEquals(new File(dir, "IMG_20180102_101500-3.jpg"), file);
+    }
+}
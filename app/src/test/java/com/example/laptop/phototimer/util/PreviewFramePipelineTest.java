@@ -0,0 +1,177 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PreviewFramePipelineTest {
+
+    /** Stands in for the camera: a fixed set of buffers that are only handed out when returned. */
+    static class FakeFrameSource implements PreviewFramePipeline.BufferRecycler {
+        LinkedBlockingQueue<byte[]> available = new LinkedBlockingQueue<byte[]>();
+        List<byte[]> recycled = Collections.synchronizedList(new ArrayList<byte[]>());
+
+        FakeFrameSource(int nbuffers, int size) {
+            for(int i=0; i<nbuffers; i++) {
+                available.add(new byte[size]);
+            }
+        }
+
+        byte[] nextFrame() throws InterruptedException {
+            return available.poll(1, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void recycleBuffer(byte[] buffer) {
+            recycled.add(buffer);
+            available.add(buffer);
+        }
+    }
+
+    PreviewFramePipeline pipeline;
+
+    @After
+    public void stopPipeline() {
+        if (pipeline!=null) pipeline.stop();
+    }
+
+    @Test
+    public void processesAndRecyclesFrames() throws Exception {
+        final int[] seenSize = new int[2];
+        pipeline = new PreviewFramePipeline(new PreviewFramePipeline.FrameProcessor() {
+            public void processFrame(byte[] frame, int width, int height) {
+                seenSize[0] = width;
+                seenSize[1] = height;
+            }
+        }, 2);
+        FakeFrameSource source = new FakeFrameSource(3, 6);
+        pipeline.setBufferRecycler(source);
+        pipeline.setFrameSize(2, 2);
+        pipeline.start();
+
+        for(int i=0; i<20; i++) {
+            byte[] frame = source.nextFrame();
+            assertNotNull("camera starved of buffers", frame);
+            pipeline.submitFrame(frame);
+        }
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!pipeline.frameQueue.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        pipeline.stop();
+
+        assertEquals(20, pipeline.getFramesProcessed() + pipeline.getFramesDropped());
+        assertTrue(pipeline.getFramesProcessed() > 0);
+        assertEquals(20, source.recycled.size());
+        assertEquals(3, source.available.size());
+        assertEquals(2, seenSize[0]);
+        assertEquals(2, seenSize[1]);
+    }
+
+    @Test
+    public void dropsFramesWhenConsumerFallsBehind() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        pipeline = new PreviewFramePipeline(new PreviewFramePipeline.FrameProcessor() {
+            public void processFrame(byte[] frame, int width, int height) {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch(InterruptedException ignored) {}
+            }
+        }, 1);
+        FakeFrameSource source = new FakeFrameSource(5, 6);
+        pipeline.setBufferRecycler(source);
+        pipeline.start();
+
+        assertTrue(pipeline.submitFrame(source.nextFrame()));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertTrue(pipeline.submitFrame(source.nextFrame()));
+        // worker is blocked and the queue is full, so these are dropped without blocking
+        assertFalse(pipeline.submitFrame(source.nextFrame()));
+        assertFalse(pipeline.submitFrame(source.nextFrame()));
+        assertEquals(2, pipeline.getFramesDropped());
+        assertEquals(2, source.recycled.size());
+
+        release.countDown();
+        pipeline.stop();
+        assertEquals(5, source.available.size());
+        assertEquals(4, pipeline.getFramesProcessed() + pipeline.getFramesDropped());
+    }
+
+    @Test
+    public void recyclesFramesSubmittedWhileStopped() {
+        pipeline = new PreviewFramePipeline(new PreviewFramePipeline.FrameProcessor() {
+            public void processFrame(byte[] frame, int width, int height) {
+                fail("pipeline is not running");
+            }
+        }, 4);
+        FakeFrameSource source = new FakeFrameSource(0, 0);
+        pipeline.setBufferRecycler(source);
+
+        assertFalse(pipeline.submitFrame(new byte[4]));
+        assertEquals(1, pipeline.getFramesDropped());
+        assertEquals(1, source.recycled.size());
+    }
+
+    @Test
+    public void countsProcessorFailuresAndKeepsRunning() throws Exception {
+        final CountDownLatch processed = new CountDownLatch(3);
+        pipeline = new PreviewFramePipeline(new PreviewFramePipeline.FrameProcessor() {
+            public void processFrame(byte[] frame, int width, int height) {
+                processed.countDown();
+                throw new IllegalStateException("frame " + processed.getCount());
+            }
+        }, 4);
+        FakeFrameSource source = new FakeFrameSource(3, 6);
+        pipeline.setBufferRecycler(source);
+        pipeline.setFrameSize(2, 2);
+        pipeline.start();
+        for(int i=0; i<3; i++) {
+            assertTrue(pipeline.submitFrame(source.nextFrame()));
+        }
+        assertTrue(processed.await(1, TimeUnit.SECONDS));
+        pipeline.stop();
+
+        assertEquals(3, pipeline.getProcessingFailures());
+        assertEquals("frame 2", pipeline.getFirstFailure().getMessage());
+        assertEquals(3, source.available.size());
+    }
+
+    @Test
+    public void discardsBuffersFromPreviousPreviewSize() throws Exception {
+        final List<Integer> processedSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch processed = new CountDownLatch(1);
+        pipeline = new PreviewFramePipeline(new PreviewFramePipeline.FrameProcessor() {
+            public void processFrame(byte[] frame, int width, int height) {
+                processedSizes.add(frame.length);
+                processed.countDown();
+            }
+        }, 4);
+        FakeFrameSource source = new FakeFrameSource(0, 0);
+        pipeline.setBufferRecycler(source);
+        pipeline.setFrameSize(4, 4);
+        // the preview switches to 2x2 while a 4x4 frame is out
+        byte[] oldFrame = new byte[24];
+        pipeline.setFrameSize(2, 2);
+        assertFalse(pipeline.submitFrame(oldFrame));
+
+        pipeline.start();
+        assertTrue(pipeline.submitFrame(new byte[6]));
+        assertTrue(processed.await(1, TimeUnit.SECONDS));
+        pipeline.stop();
+
+        assertEquals(Collections.singletonList(6), processedSizes);
+        assertEquals(1, pipeline.getBuffersDiscarded());
+        assertEquals(1, source.recycled.size());
+    }
+}
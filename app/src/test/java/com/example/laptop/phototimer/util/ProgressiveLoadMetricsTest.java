@@ -0,0 +1,56 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ProgressiveLoadMetricsTest {
+
+    static final long MS = 1000000L;
+
+    @Test
+    public void measuresPlaceholderThenFullResolution() {
+        ProgressiveLoadMetrics metrics = new ProgressiveLoadMetrics("Viewer", 1, 1000 * MS);
+        assertEquals(-1, metrics.timeToFirstImageNanos());
+        assertEquals(-1, metrics.timeToFullResolutionNanos());
+
+        metrics.placeholderShown(0, 1012 * MS);
+        metrics.fullResolutionShown(0, 1250 * MS);
+        assertEquals(12 * MS, metrics.timeToFirstImageNanos());
+        assertEquals(250 * MS, metrics.timeToFullResolutionNanos());
+        assertEquals("Viewer: first image +12.0ms, full resolution +250.0ms, 1 of 1 from cached thumbnails",
+                metrics.summary());
+    }
+
+    @Test
+    public void fullResolutionWaitsForEveryImage() {
+        ProgressiveLoadMetrics metrics = new ProgressiveLoadMetrics("Grid", 3, 0);
+        metrics.placeholderShown(1, 20 * MS);
+        metrics.fullResolutionShown(0, 15 * MS);
+        metrics.fullResolutionShown(1, 300 * MS);
+        assertEquals(15 * MS, metrics.timeToFirstImageNanos());
+        assertEquals(-1, metrics.timeToFullResolutionNanos());
+
+        metrics.fullResolutionShown(2, 200 * MS);
+        assertEquals(300 * MS, metrics.timeToFullResolutionNanos());
+        assertEquals(1, metrics.getPlaceholderCount());
+    }
+
+    @Test
+    public void keepsFirstMark() {
+        ProgressiveLoadMetrics metrics = new ProgressiveLoadMetrics("Viewer", 1, 0);
+        metrics.placeholderShown(0, 10 * MS);
+        metrics.placeholderShown(0, 5 * MS);
+        metrics.fullResolutionShown(0, 100 * MS);
+        metrics.fullResolutionShown(0, 200 * MS);
+        assertEquals(10 * MS, metrics.timeToFirstImageNanos());
+        assertEquals(100 * MS, metrics.timeToFullResolutionNanos());
+    }
+
+    @Test
+    public void summaryWithoutImages() {
+        ProgressiveLoadMetrics metrics = new ProgressiveLoadMetrics("Grid", 2, 0);
+        assertEquals("Grid: first image none, full resolution incomplete, 0 of 2 from cached thumbnails",
+                metrics.summary());
+    }
+}
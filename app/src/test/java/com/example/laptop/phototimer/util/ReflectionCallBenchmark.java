@@ -0,0 +1,93 @@
+package com.example.laptop.phototimer.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Measures per-call cost of the lookup patterns CameraUtils and AndroidUtils used to apply on every
+ * call (getMethod + invoke, and Class.forName + getField for getCameraInfo) against a cached Method
+ * and a direct call. The Android classes aren't available on the JVM, so FakeBitmap and FakeInfo
+ * stand in for Bitmap.getByteCount and Camera.CameraInfo. Run the main method.
+ */
+public class ReflectionCallBenchmark {
+
+    static final int WARMUP_CALLS = 200000;
+    static final int MEASURED_CALLS = 2000000;
+
+    public static class FakeBitmap {
+        int width = 320, height = 240;
+
+        public int getByteCount() {
+            return 4 * width * height;
+        }
+    }
+
+    public static class FakeInfo {
+        public int facing = 1;
+        public int orientation = 270;
+    }
+
+    interface Call {
+        int run(FakeBitmap bitmap) throws Exception;
+    }
+
+    static final Call LOOKUP_EACH_CALL = new Call() {
+        public int run(FakeBitmap bitmap) throws Exception {
+            Method m = FakeBitmap.class.getMethod("getByteCount");
+            return (Integer)m.invoke(bitmap);
+        }
+    };
+
+    static Method cachedMethod;
+    static final Call CACHED_METHOD = new Call() {
+        public int run(FakeBitmap bitmap) throws Exception {
+            return (Integer)cachedMethod.invoke(bitmap);
+        }
+    };
+
+    static final Call DIRECT = new Call() {
+        public int run(FakeBitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+
+    static final Call FIELD_LOOKUP_EACH_CALL = new Call() {
+        public int run(FakeBitmap bitmap) throws Exception {
+            Class<?> infoClass = Class.forName(FakeInfo.class.getName());
+            Object info = infoClass.newInstance();
+            Field facing = infoClass.getField("facing");
+            Field orientation = infoClass.getField("orientation");
+            return facing.getInt(info) + orientation.getInt(info);
+        }
+    };
+
+    static final Call FIELD_DIRECT = new Call() {
+        public int run(FakeBitmap bitmap) {
+            FakeInfo info = new FakeInfo();
+            return info.facing + info.orientation;
+        }
+    };
+
+    static double nanosPerCall(Call call, FakeBitmap bitmap, long[] sink) throws Exception {
+        for(int i=0; i<WARMUP_CALLS; i++) {
+            sink[0] += call.run(bitmap);
+        }
+        long t0 = System.nanoTime();
+        for(int i=0; i<MEASURED_CALLS; i++) {
+            sink[0] += call.run(bitmap);
+        }
+        return (System.nanoTime() - t0) / (double)MEASURED_CALLS;
+    }
+
+    public static void main(String[] args) throws Exception {
+        cachedMethod = FakeBitmap.class.getMethod("getByteCount");
+        FakeBitmap bitmap = new FakeBitmap();
+        long[] sink = new long[1];
+
+        System.out.println(String.format("getByteCount  lookup each call: %.1f ns  cached Method: %.1f ns  direct: %.1f ns",
+                nanosPerCall(LOOKUP_EACH_CALL, bitmap, sink), nanosPerCall(CACHED_METHOD, bitmap, sink),
+                nanosPerCall(DIRECT, bitmap, sink)));
+        System.out.println(String.format("getCameraInfo lookup each call: %.1f ns  direct: %.1f ns (%d)",
+                nanosPerCall(FIELD_LOOKUP_EACH_CALL, bitmap, sink), nanosPerCall(FIELD_DIRECT, bitmap, sink), sink[0]));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScoredPreviewSizeStrategyTest {
+
+    // preview sizes reported by a Nexus 5 back camera
+    static final int[][] NEXUS_5 = {{1920, 1080}, {1280, 960}, {1280, 720}, {800, 480}, {768, 432}, {720, 480},
+            {640, 480}, {576, 432}, {480, 320}, {384, 288}, {352, 288}, {320, 240}, {240, 160}, {176, 144}};
+    // preview sizes reported by a Galaxy S7 back camera
+    static final int[][] GALAXY_S7 = {{1920, 1080}, {1440, 1080}, {1088, 1088}, {1280, 720}, {1056, 864},
+            {960, 720}, {880, 720}, {720, 720}, {720, 480}, {640, 480}, {352, 288}, {320, 240}, {176, 144}};
+    static final int[][] UHD_TABLET = {{3840, 2160}, {1920, 1080}, {1280, 720}, {640, 480}};
+
+    static List<int[]> sizes(int[][] values) {
+        return new ArrayList<int[]>(Arrays.asList(values));
+    }
+
+    static int[] select(PreviewSizeStrategy strategy, int[][] candidates, int[] view, int[] capture, List<int[]> fps) {
+        int index = strategy.selectPreviewSize(sizes(candidates), view, capture, fps);
+        return candidates[index];
+    }
+
+    static final int[] PHONE_VIEW = {1920, 1080};
+
+    @Test
+    public void matchesFourByThreeCaptureWhereNearestPicksWidescreen() {
+        int[] capture = {3264, 2448};
+        assertArrayEquals(new int[] {1920, 1080},
+                select(CameraUtils.NEAREST_PREVIEW_SIZE, NEXUS_5, PHONE_VIEW, capture, null));
+        assertArrayEquals(new int[] {1280, 960},
+                select(new ScoredPreviewSizeStrategy(), NEXUS_5, PHONE_VIEW, capture, null));
+        assertArrayEquals(new int[] {1440, 1080},
+                select(new ScoredPreviewSizeStrategy(), GALAXY_S7, PHONE_VIEW, new int[] {4032, 3024}, null));
+    }
+
+    @Test
+    public void matchesWidescreenCapture() {
+        assertArrayEquals(new int[] {1920, 1080},
+                select(new ScoredPreviewSizeStrategy(), NEXUS_5, PHONE_VIEW, new int[] {3264, 1836}, null));
+    }
+
+    @Test
+    public void treatsPortraitViewLikeLandscape() {
+        int[] capture = {3264, 2448};
+        assertArrayEquals(select(new ScoredPreviewSizeStrategy(), NEXUS_5, PHONE_VIEW, capture, null),
+                select(new ScoredPreviewSizeStrategy(), NEXUS_5, new int[] {1080, 1920}, capture, null));
+    }
+
+    @Test
+    public void staysWithinPixelBudget() {
+        int[] view = {3840, 2160};
+        int[] capture = {3840, 2160};
+        assertArrayEquals(new int[] {1920, 1080},
+                select(new ScoredPreviewSizeStrategy(), UHD_TABLET, view, capture, null));
+
+        ScoredPreviewSizeStrategy unlimited = new ScoredPreviewSizeStrategy();
+        unlimited.setMaxPreviewPixels(0);
+        unlimited.setMaxBytesPerSecond(0);
+        assertArrayEquals(new int[] {3840, 2160}, select(unlimited, UHD_TABLET, view, capture, null));
+    }
+
+    @Test
+    public void accountsForFrameRate() {
+        int[] capture = {3264, 1836};
+        List<int[]> fps30 = Arrays.asList(new int[] {15000, 30000}, new int[] {30000, 30000});
+        List<int[]> fps60 = Arrays.asList(new int[] {15000, 30000}, new int[] {60000, 60000});
+        assertArrayEquals(new int[] {1920, 1080},
+                select(new ScoredPreviewSizeStrategy(), NEXUS_5, PHONE_VIEW, capture, fps30));
+        assertArrayEquals(new int[] {1280, 720},
+                select(new ScoredPreviewSizeStrategy(), NEXUS_5, PHONE_VIEW, capture, fps60));
+    }
+
+    @Test
+    public void computesMaxFrameRate() {
+        assertEquals(ScoredPreviewSizeStrategy.DEFAULT_FPS, ScoredPreviewSizeStrategy.maxFrameRate(null));
+        assertEquals(30, ScoredPreviewSizeStrategy.maxFrameRate(Arrays.asList(new int[] {7000, 29970})));
+        assertEquals(60, ScoredPreviewSizeStrategy.maxFrameRate(Arrays.asList(new int[] {7000, 30000}, new int[] {60000, 60000})));
+    }
+
+    @Test
+    public void returnsNoneForEmptyList() {
+        assertEquals(-1, new ScoredPreviewSizeStrategy().selectPreviewSize(new ArrayList<int[]>(), PHONE_VIEW, null, null));
+        assertEquals(-1, CameraUtils.NEAREST_PREVIEW_SIZE.selectPreviewSize(new ArrayList<int[]>(), PHONE_VIEW, null, null));
+    }
+}
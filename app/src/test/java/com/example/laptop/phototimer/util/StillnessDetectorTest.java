@@ -0,0 +1,174 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StillnessDetectorTest {
+
+    static final int WIDTH = 64, HEIGHT = 48;
+    static final long MS = 1000000L;
+
+    static class RecordingListener implements StillnessDetector.Listener {
+        List<Boolean> timeouts = new ArrayList<Boolean>();
+        List<Long> waits = new ArrayList<Long>();
+
+        public void stillnessDetected(boolean timedOut, long waitNanos) {
+            timeouts.add(timedOut);
+            waits.add(waitNanos);
+        }
+    }
+
+    static byte[] squareAt(int x) {
+        return FrameDifferencerTest.frame(100, x, 16, 16);
+    }
+
+    StillnessDetector createDetector(RecordingListener listener, IntervalSchedulerTest.FakeClock clock) {
+        StillnessDetector detector = new StillnessDetector(listener, clock);
+        detector.setStillDurationNanos(500 * MS);
+        detector.setTimeoutNanos(3000 * MS);
+        // keep analysis of every frame regardless of how slow the test machine is
+        detector.setFrameBudgetNanos(Long.MAX_VALUE);
+        return detector;
+    }
+
+    @Test
+    public void ignoresFramesUntilArmed() {
+        RecordingListener listener = new RecordingListener();
+        StillnessDetector detector = createDetector(listener, new IntervalSchedulerTest.FakeClock());
+        for(int i=0; i<10; i++) {
+            detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+        }
+        assertTrue(listener.timeouts.isEmpty());
+        assertEquals(0, detector.getFramesAnalyzed());
+    }
+
+    @Test
+    public void firesAfterSceneStaysStillForDuration() {
+        IntervalSchedulerTest.FakeClock clock = new IntervalSchedulerTest.FakeClock();
+        RecordingListener listener = new RecordingListener();
+        StillnessDetector detector = createDetector(listener, clock);
+        detector.arm();
+
+        // subject moving into frame
+        for(int i=0; i<5; i++) {
+            detector.processFrame(squareAt(i * 8), WIDTH, HEIGHT);
+            clock.now += 100 * MS;
+        }
+        assertTrue(listener.timeouts.isEmpty());
+
+        // still from 500ms; fires once 500ms have passed without change
+        for(int i=0; i<10 && listener.timeouts.isEmpty(); i++) {
+            detector.processFrame(squareAt(40), WIDTH, HEIGHT);
+            clock.now += 100 * MS;
+        }
+        assertEquals(1, listener.timeouts.size());
+        assertFalse(listener.timeouts.get(0));
+        assertEquals(1100 * MS, (long)listener.waits.get(0));
+        assertFalse(detector.isArmed());
+
+        detector.processFrame(squareAt(40), WIDTH, HEIGHT);
+        assertEquals(1, listener.timeouts.size());
+    }
+
+    @Test
+    public void movementRestartsStillPeriod() {
+        IntervalSchedulerTest.FakeClock clock = new IntervalSchedulerTest.FakeClock();
+        RecordingListener listener = new RecordingListener();
+        StillnessDetector detector = createDetector(listener, clock);
+        detector.arm();
+
+        detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+        for(int i=0; i<4; i++) {
+            clock.now += 100 * MS;
+            detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+        }
+        clock.now += 100 * MS;
+        detector.processFrame(squareAt(24), WIDTH, HEIGHT);
+        for(int i=0; i<4; i++) {
+            clock.now += 100 * MS;
+            detector.processFrame(squareAt(24), WIDTH, HEIGHT);
+        }
+        assertTrue(listener.timeouts.isEmpty());
+        clock.now += 200 * MS;
+        detector.processFrame(squareAt(24), WIDTH, HEIGHT);
+        assertEquals(1, listener.timeouts.size());
+    }
+
+    @Test
+    public void firesOnTimeoutWhenSceneKeepsMoving() {
+        IntervalSchedulerTest.FakeClock clock = new IntervalSchedulerTest.FakeClock();
+        RecordingListener listener = new RecordingListener();
+        StillnessDetector detector = createDetector(listener, clock);
+        detector.arm();
+
+        for(int i=0; i<40 && listener.timeouts.isEmpty(); i++) {
+            detector.processFrame(squareAt((i % 2) * 32), WIDTH, HEIGHT);
+            clock.now += 100 * MS;
+        }
+        assertEquals(1, listener.timeouts.size());
+        assertTrue(listener.timeouts.get(0));
+        assertEquals(3000 * MS, (long)listener.waits.get(0));
+        assertFalse(detector.isArmed());
+    }
+
+    @Test
+    public void armingStartsOver() {
+        IntervalSchedulerTest.FakeClock clock = new IntervalSchedulerTest.FakeClock();
+        RecordingListener listener = new RecordingListener();
+        StillnessDetector detector = createDetector(listener, clock);
+        detector.arm();
+        for(int i=0; i<4; i++) {
+            detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+            clock.now += 100 * MS;
+        }
+        detector.disarm();
+        clock.now += 10000 * MS;
+        detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+        assertTrue(listener.timeouts.isEmpty());
+
+        // the old reference frame and still period are forgotten
+        detector.arm();
+        detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+        clock.now += 400 * MS;
+        detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+        assertTrue(listener.timeouts.isEmpty());
+    }
+
+    @Test
+    public void skipsFramesWhileOverBudget() {
+        StillnessDetector detector = new StillnessDetector(null, new IntervalSchedulerTest.FakeClock());
+        detector.setFrameBudgetNanos(10 * MS);
+        assertEquals(1, detector.getFrameStride());
+
+        for(int i=0; i<6; i++) {
+            detector.recordProcessingTime(15 * MS);
+        }
+        assertEquals(StillnessDetector.MAX_FRAME_STRIDE, detector.getFrameStride());
+        assertEquals(6, detector.getFramesOverBudget());
+
+        // within budget but not comfortably: stride holds
+        detector.recordProcessingTime(8 * MS);
+        assertEquals(StillnessDetector.MAX_FRAME_STRIDE, detector.getFrameStride());
+        detector.recordProcessingTime(2 * MS);
+        detector.recordProcessingTime(2 * MS);
+        assertEquals(StillnessDetector.MAX_FRAME_STRIDE - 2, detector.getFrameStride());
+    }
+
+    @Test
+    public void skippedFramesAreCounted() {
+        StillnessDetector detector = new StillnessDetector(null, new IntervalSchedulerTest.FakeClock());
+        // every analyzed frame is over budget, so the stride grows to its maximum
+        detector.setFrameBudgetNanos(-1);
+        detector.arm();
+        for(int i=0; i<10; i++) {
+            detector.processFrame(squareAt(0), WIDTH, HEIGHT);
+        }
+        assertEquals(StillnessDetector.MAX_FRAME_STRIDE, detector.getFrameStride());
+        assertEquals(5, detector.getFramesAnalyzed());
+        assertEquals(5, detector.getFramesSkipped());
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailDiskIndexTest {
+
+    File dir;
+    File indexFile;
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = File.createTempFile("thumbindex", "");
+        dir.delete();
+        dir.mkdirs();
+        indexFile = new File(dir, ".thumbindex");
+    }
+
+    @After
+    public void deleteDirectory() {
+        for(File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    ThumbnailDiskIndex.Entry thumbnail(String name, long size) throws IOException {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[(int)size]);
+        out.close();
+        return new ThumbnailDiskIndex.Entry("file:///images/" + name, file.getPath(), 92, 69, 1000L, size);
+    }
+
+    @Test
+    public void entriesPersistAcrossInstances() throws IOException {
+        ThumbnailDiskIndex index = new ThumbnailDiskIndex(indexFile, 10000);
+        index.put(thumbnail("a.jpg", 100));
+        index.put(thumbnail("b.jpg", 200));
+        index.remove("file:///images/a.jpg");
+
+        ThumbnailDiskIndex reloaded = new ThumbnailDiskIndex(indexFile, 10000);
+        assertEquals(1, reloaded.size());
+        assertEquals(200, reloaded.totalBytes());
+        assertNull(reloaded.get("file:///images/a.jpg", 1000L));
+        ThumbnailDiskIndex.Entry entry = reloaded.get("file:///images/b.jpg", 1000L);
+        assertNotNull(entry);
+        assertEquals(92, entry.width);
+        assertEquals(69, entry.height);
+        assertEquals(1, reloaded.getStats().getHits());
+        assertEquals(1, reloaded.getStats().getMisses());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedWhenOverBudget() throws IOException {
+        ThumbnailDiskIndex index = new ThumbnailDiskIndex(indexFile, 250);
+        ThumbnailDiskIndex.Entry a = thumbnail("a.jpg", 100);
+        ThumbnailDiskIndex.Entry b = thumbnail("b.jpg", 100);
+        index.put(a);
+        index.put(b);
+        assertNotNull(index.get(a.key, 1000L));
+
+        index.put(thumbnail("c.jpg", 100));
+        assertEquals(2, index.size());
+        assertNull(index.get(b.key, 1000L));
+        assertFalse(new File(b.thumbnailPath).exists());
+        assertTrue(new File(a.thumbnailPath).exists());
+        assertEquals(1, index.getStats().getEvictions());
+    }
+
+    @Test
+    public void staleSourceInvalidatesEntry() throws IOException {
+        ThumbnailDiskIndex index = new ThumbnailDiskIndex(indexFile, 10000);
+        ThumbnailDiskIndex.Entry a = thumbnail("a.jpg", 100);
+        index.put(a);
+
+        assertNull(index.get(a.key, 2000L));
+        assertEquals(0, index.size());
+        assertFalse(new File(a.thumbnailPath).exists());
+    }
+
+    @Test
+    public void compactsLogWhenMostlyObsolete() throws IOException {
+        ThumbnailDiskIndex index = new ThumbnailDiskIndex(indexFile, 100000);
+        ThumbnailDiskIndex.Entry a = thumbnail("a.jpg", 10);
+        for(int i=0; i<ThumbnailDiskIndex.MIN_RECORDS_BEFORE_COMPACTION; i++) {
+            index.put(a);
+        }
+        assertTrue(index.recordCount < ThumbnailDiskIndex.MIN_RECORDS_BEFORE_COMPACTION);
+
+        ThumbnailDiskIndex reloaded = new ThumbnailDiskIndex(indexFile, 100000);
+        assertEquals(1, reloaded.size());
+        assertEquals(10, reloaded.totalBytes());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.laptop.phototimer.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TileLayoutTest {
+
+    @Test
+    public void sampleSizeKeepsAtLeastOneDecodedPixelPerDisplayPixel() {
+        assertEquals(1, TileLayout.sampleSizeForScale(2.0f));
+        assertEquals(1, TileLayout.sampleSizeForScale(1.0f));
+        assertEquals(1, TileLayout.sampleSizeForScale(0.6f));
+        assertEquals(2, TileLayout.sampleSizeForScale(0.5f));
+        assertEquals(2, TileLayout.sampleSizeForScale(0.3f));
+        // 13 MP capture fitted to a 1080 pixel wide screen
+        assertEquals(2, TileLayout.sampleSizeForScale(1080f / 4160));
+        assertEquals(8, TileLayout.sampleSizeForScale(0.125f));
+        assertEquals(1, TileLayout.sampleSizeForScale(0));
+    }
+
+    @Test
+    public void edgeTilesAreClippedToImage() {
+        TileLayout layout = new TileLayout(1000, 600, 256);
+        assertEquals(4, layout.columnCount(1));
+        assertEquals(3, layout.rowCount(1));
+        assertEquals(2, layout.columnCount(2));
+        assertEquals(2, layout.rowCount(2));
+        assertEquals(1, layout.columnCount(4));
+
+        assertArrayEquals(new int[] {0, 0, 256, 256}, layout.tileBounds(new TileLayout.TileKey(1, 0, 0)));
+        assertArrayEquals(new int[] {768, 512, 1000, 600}, layout.tileBounds(new TileLayout.TileKey(1, 3, 2)));
+        assertArrayEquals(new int[] {512, 512, 1000, 600}, layout.tileBounds(new TileLayout.TileKey(2, 1, 1)));
+    }
+
+    @Test
+    public void visibleTilesCoverViewport() {
+        TileLayout layout = new TileLayout(4160, 3120, 256);
+        List<TileLayout.TileKey> tiles = new ArrayList<TileLayout.TileKey>();
+
+        layout.visibleTiles(1, 300, 200, 800, 520, tiles);
+        assertEquals(3 * 3, tiles.size());
+        assertEquals(new TileLayout.TileKey(1, 1, 0), tiles.get(0));
+        assertEquals(new TileLayout.TileKey(1, 3, 2), tiles.get(8));
+
+        // a viewport ending exactly on a tile boundary doesn't include the next tile
+        layout.visibleTiles(1, 0, 0, 512, 256, tiles);
+        assertEquals(2, tiles.size());
+
+        // the whole image at sample size 4
+        layout.visibleTiles(4, -100, -100, 5000, 4000, tiles);
+        assertEquals(layout.columnCount(4) * layout.rowCount(4), tiles.size());
+        assertEquals(5 * 4, tiles.size());
+
+        layout.visibleTiles(1, 5000, 0, 6000, 100, tiles);
+        assertTrue(tiles.isEmpty());
+    }
+
+    @Test
+    public void parentTileCoversChild() {
+        TileLayout layout = new TileLayout(4160, 3120, 256);
+        TileLayout.TileKey child = new TileLayout.TileKey(2, 5, 3);
+        TileLayout.TileKey parent = child.parent();
+        assertEquals(new TileLayout.TileKey(4, 2, 1), parent);
+
+        int[] childBounds = layout.tileBounds(child);
+        int[] parentBounds = layout.tileBounds(parent);
+        assertTrue(parentBounds[0] <= childBounds[0] && parentBounds[1] <= childBounds[1]);
+        assertTrue(parentBounds[2] >= childBounds[2] && parentBounds[3] >= childBounds[3]);
+    }
+}